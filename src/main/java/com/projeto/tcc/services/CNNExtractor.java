@@ -1,51 +1,185 @@
 package com.projeto.tcc.services;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.opencv.opencv_core.Mat;
-import org.datavec.image.loader.NativeImageLoader;
-import org.deeplearning4j.nn.graph.ComputationGraph;
-import org.deeplearning4j.zoo.ZooModel;
-import org.deeplearning4j.zoo.model.VGG16;
-import org.deeplearning4j.zoo.PretrainedType;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.dataset.api.preprocessor.VGG16ImagePreProcessor;
 import org.nd4j.linalg.factory.Nd4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class CNNExtractor {
-    private final ComputationGraph vgg16;
+    // Primeira linha dos arquivos de descritores CNN: identifica a rede e a camada que os produziram
+    public static final String MODEL_HEADER_PREFIX = "# modelo=";
 
-    public CNNExtractor() throws IOException {
-        // Carrega o modelo VGG16 pré-treinado uma única vez
-        ZooModel zooModel = VGG16.builder().build();
-        vgg16 = (ComputationGraph) zooModel.initPretrained(PretrainedType.IMAGENET);
-        vgg16.initGradientsView();
+    private final CnnBackbone backbone;
+    private final File modelCacheDir;
+    private volatile CnnEmbeddingModel model;
+
+    @Autowired
+    private DescriptorCache descriptorCache;
+
+    @Value("${tcc.cnn.tamanho-lote:16}")
+    private int inferenceBatchSize;
+
+    @Value("${tcc.cnn.threads-leitura:4}")
+    private int loaderThreads;
+
+    @Value("${tcc.cnn.capacidade-fila:64}")
+    private int pipelineCapacity;
+
+    public CNNExtractor(@Value("${tcc.cnn.modelo:VGG16}") CnnBackbone backbone,
+                        @Value("${tcc.cnn.cache-modelo:D:\\UFU\\tcc_video_frames\\modelos}") String modelCacheDir) {
+        this.backbone = backbone;
+        this.modelCacheDir = new File(modelCacheDir);
+        log.info("Extrator CNN: {} (camada {})", backbone, backbone.getEmbeddingLayer());
+    }
+
+    // O modelo só é carregado no primeiro uso da CNN, para não atrasar a subida do menu nas opções HOG/ORB
+    private CnnEmbeddingModel model() throws IOException {
+        CnnEmbeddingModel loaded = model;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = model;
+                if (loaded == null) {
+                    loaded = CnnEmbeddingModel.load(backbone, modelCacheDir);
+                    model = loaded;
+                }
+            }
+        }
+        return loaded;
     }
 
-    public List<INDArray> cnnFeaturesExtractorBatch(List<String> imagePaths) throws IOException {
+    public CnnBackbone getBackbone() {
+        return backbone;
+    }
+
+    public String descriptorFileHeader() {
+        return MODEL_HEADER_PREFIX + backbone + ";camada=" + backbone.getEmbeddingLayer() + "\n\n";
+    }
+
+    // Rede registrada no cabeçalho do arquivo; arquivos sem cabeçalho foram gerados pela VGG16
+    public static String readModelName(File descriptorFile) throws IOException {
+        if (DescriptorFile.isBinary(descriptorFile)) {
+            // No formato binário o cabeçalho de texto vai nos metadados do arquivo
+            try (DescriptorFile.Reader reader = DescriptorFile.open(descriptorFile)) {
+                String metadata = reader.getMetadata();
+                if (metadata.startsWith(MODEL_HEADER_PREFIX)) {
+                    return metadata.substring(MODEL_HEADER_PREFIX.length()).split(";")[0];
+                }
+            }
+            return CnnBackbone.VGG16.name();
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(descriptorFile))) {
+            String line = reader.readLine();
+            if (line != null && line.startsWith(MODEL_HEADER_PREFIX)) {
+                return line.substring(MODEL_HEADER_PREFIX.length()).split(";")[0];
+            }
+        }
+        return CnnBackbone.VGG16.name();
+    }
+
+    public List<INDArray> cnnFeaturesExtractorBatch(List<String> imagePaths) throws Exception {
         log.info("Extração CNN em lote");
-        List<INDArray> featuresList = new ArrayList<>();
+        INDArray[] features = new INDArray[imagePaths.size()];
+        pipeline().run(imagePaths.size(), position -> CnnInferencePipeline.Input.image(loadImageAndPreProcess(imagePaths.get(position))),
+                (position, cnnFeatures) -> features[position] = cnnFeatures);
+        return Arrays.asList(features);
+    }
 
-        for (String imagePath : imagePaths) {
-            INDArray frame = loadImageAndPreProcess(imagePath);
+    // Inferência em lote sobre quadros já pré-processados por quem chamou
+    public List<INDArray> cnnFeaturesExtractorBatchFromInputs(List<INDArray> images) throws IOException {
+        return model().extract(images, inferenceBatchSize);
+    }
 
-            // Processa a imagem individualmente
-            INDArray singleFeature = vgg16.feedForward(frame, false).get("fc2");
+    /*
+    Lê e pré-processa os quadros em várias threads enquanto a inferência consome lotes já prontos;
+    os descritores chegam ao consumidor na ordem dos quadros.
+     */
+    public void cnnFeaturesExtractorPipelined(FrameSource frameSource, CnnInferencePipeline.FeatureConsumer consumer) throws Exception {
+        cnnFeaturesExtractorPipelined(frameSource, 0, consumer);
+    }
 
-            // Evita vazamentos de memória e problemas de espaço de trabalho INDArrays
-            Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+    // Mesma extração a partir da posição firstPosition; o consumidor recebe as posições na FrameSource
+    public void cnnFeaturesExtractorPipelined(FrameSource frameSource, int firstPosition, CnnInferencePipeline.FeatureConsumer consumer) throws Exception {
+        log.info("Extração CNN em pipeline ({} threads de leitura), a partir do quadro {}", loaderThreads, firstPosition);
+        // Chaves de cache dos quadros que foram para a inferência, para guardar os descritores calculados
+        Map<Integer, DescriptorCache.Key> pendingKeys = new ConcurrentHashMap<>();
+        pipeline().run(frameSource.size() - firstPosition, position -> {
+            Mat frame = frameSource.readFrameAt(firstPosition + position);
+            try {
+                DescriptorCache.Key key = cacheKey(frame);
+                INDArray cached = cachedFeatures(key);
+                if (cached != null) {
+                    return CnnInferencePipeline.Input.features(cached);
+                }
+                if (key != null) {
+                    pendingKeys.put(position, key);
+                }
+                return CnnInferencePipeline.Input.image(matToPreProcessedINDArray(frame));
+            } finally {
+                frame.release();
+            }
+        }, (position, features) -> {
+            storeFeatures(pendingKeys.remove(position), features);
+            consumer.accept(firstPosition + position, features);
+        });
+    }
 
-            featuresList.add(singleFeature);
+    // Chave do quadro original no cache de descritores; a rede e a camada fazem parte da configuração
+    public DescriptorCache.Key cacheKey(Mat frame) {
+        return descriptorCache.key(frame, cacheConfiguration());
+    }
+
+    public INDArray cachedFeatures(DescriptorCache.Key key) {
+        float[] cached = descriptorCache.getFloats(key);
+        return cached == null ? null : Nd4j.create(cached, new long[]{1, cached.length});
+    }
+
+    public void storeFeatures(DescriptorCache.Key key, INDArray features) {
+        if (key != null) {
+            descriptorCache.putFloats(key, features.toFloatVector());
         }
+    }
 
-        return featuresList;
+    private String cacheConfiguration() {
+        return "CNN;" + backbone + ";camada=" + backbone.getEmbeddingLayer() + ";entrada=" + backbone.getInputSize();
     }
 
+    private CnnInferencePipeline pipeline() throws IOException {
+        return new CnnInferencePipeline(model(), loaderThreads, inferenceBatchSize, pipelineCapacity);
+    }
 
+    // Extração a partir de quadros já decodificados em memória, sem passar pelo disco
+    public List<INDArray> cnnFeaturesExtractorBatchFromMats(List<Mat> frames) throws IOException {
+        log.info("Extração CNN em lote (quadros em memória)");
+        INDArray[] features = new INDArray[frames.size()];
+        List<DescriptorCache.Key> keys = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<INDArray> images = new ArrayList<>();
+        for (int i = 0; i < frames.size(); i++) {
+            DescriptorCache.Key key = cacheKey(frames.get(i));
+            features[i] = cachedFeatures(key);
+            if (features[i] == null) {
+                keys.add(key);
+                positions.add(i);
+                images.add(matToPreProcessedINDArray(frames.get(i)));
+            }
+        }
+        if (!images.isEmpty()) {
+            List<INDArray> computed = model().extract(images, inferenceBatchSize);
+            for (int i = 0; i < computed.size(); i++) {
+                features[positions.get(i)] = computed.get(i);
+                storeFeatures(keys.get(i), computed.get(i));
+            }
+        }
+        return Arrays.asList(features);
+    }
 
     // Função para carregar e pré-processar uma imagem
     public INDArray loadImageAndPreProcess(String imagePath) throws IOException {
@@ -54,22 +188,37 @@ public class CNNExtractor {
         Subtração da Média: A média de cada canal de cor (RGB) é subtraída de cada pixel. Esse valor médio é específico para o conjunto de dados ImageNet, no qual o modelo VGG16 foi pré-treinado. Essa etapa é importante para centralizar os dados em torno de zero, o que ajuda na convergência do treinamento da rede.
         Reordenamento dos Canais: Os canais de cor são reordenados. Por padrão, muitas bibliotecas de processamento de imagens, incluindo o OpenCV, carregam imagens no formato BGR (Azul, Verde, Vermelho). No entanto, a rede VGG16 espera que as imagens estejam no formato RGB. Portanto, a ordem dos canais é alterada para corresponder à expectativa da rede.
          */
-        NativeImageLoader loader = new NativeImageLoader(224, 224, 3);
-        INDArray image = loader.asMatrix(new File(imagePath));
-        VGG16ImagePreProcessor preProcessor = new VGG16ImagePreProcessor();
-        preProcessor.transform(image);
-        return image;
+        if (imagePath.endsWith("." + FrameCodec.RAW_BGR.getExtension())) {
+            Mat frame = FrameEncoderPool.readFrame(new File(imagePath));
+            try {
+                return matToPreProcessedINDArray(frame);
+            } finally {
+                frame.release();
+            }
+        }
+        return model().preprocess(new File(imagePath));
+    }
+
+    // Mesmo pré-processamento de loadImageAndPreProcess, partindo de um Mat BGR em memória
+    public INDArray matToPreProcessedINDArray(Mat frame) throws IOException {
+        return model().preprocess(frame);
     }
 
     public static double compareFeatures(INDArray features1, INDArray features2) {
-        // Normalizar os vetores de características
-        INDArray normFeatures1 = features1.div(features1.norm2Number());
-        INDArray normFeatures2 = features2.div(features2.norm2Number());
-        int alpha = 5;
+        return compareFeatures(features1.toFloatVector(), features2.toFloatVector());
+    }
 
-        // Calcular a distância euclidiana entre os vetores normalizados
-        INDArray diff = normFeatures1.sub(normFeatures2);
-        double distanciaEuclidiana = diff.norm2Number().doubleValue();
+    public static double compareFeatures(float[] features1, float[] features2) {
+        return normalizedSimilarity(VectorMath.dot(features1, features2), VectorMath.dot(features1, features1), VectorMath.dot(features2, features2));
+    }
+
+    /*
+    Distância euclidiana entre os vetores normalizados, a partir do produto interno e das normas ao quadrado:
+    |a/|a| - b/|b||² = 2 - 2 a.b / (|a| |b|). Os agrupamentos guardam a norma da média e de cada descritor.
+     */
+    private static double normalizedSimilarity(double dot, double squaredNorm1, double squaredNorm2) {
+        int alpha = 5;
+        double distanciaEuclidiana = Math.sqrt(Math.max(0, 2 - 2 * dot / Math.sqrt(squaredNorm1 * squaredNorm2)));
 
         // Normalização para o intervalo [0.1, 1] usando uma função sigmoide ajustada
         double similaridade = 0.9 / (1 + Math.exp(alpha * distanciaEuclidiana)) + 0.1;
@@ -77,24 +226,37 @@ public class CNNExtractor {
         return similaridade;
     }
 
-    public static INDArray stringToINDArray(String str) {
-        // Convertendo a string de volta para um INDArray
-        List<double[]> rows = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new StringReader(str))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] values = line.split(",");
-                double[] row = new double[values.length];
-                for (int i = 0; i < values.length; i++) {
-                    row[i] = Double.parseDouble(values[i]);
+    /*
+    Todos os descritores do arquivo (texto ou binário) numa única matriz contígua; cada descritor é uma
+    linha dessa matriz (visão 1 x dimensão).
+     */
+    public static List<INDArray> readDescriptors(File descriptorFile) throws IOException {
+        float[] values = new float[0];
+        int size = 0;
+        int dimension = 0;
+        try (DescriptorReader reader = DescriptorReader.open(descriptorFile)) {
+            while (reader.next()) {
+                if (size == 0) {
+                    dimension = reader.length();
+                } else if (reader.length() != dimension) {
+                    throw new IOException("Descritor " + reader.position() + " com " + reader.length() + " valores, esperado " + dimension + ".");
                 }
-                rows.add(row);
+                if ((long) (size + 1) * dimension > values.length) {
+                    values = Arrays.copyOf(values, Math.toIntExact(Math.max((long) (size + 1) * dimension, 2L * values.length)));
+                }
+                System.arraycopy(reader.values(), 0, values, size * dimension, dimension);
+                size++;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        double[][] data = rows.toArray(new double[0][]);
-        return Nd4j.create(data);
+        List<INDArray> descriptors = new ArrayList<>(size);
+        if (size == 0) {
+            return descriptors;
+        }
+        INDArray matrix = Nd4j.create(Arrays.copyOf(values, size * dimension), new long[]{size, dimension}, 'c');
+        for (int position = 0; position < size; position++) {
+            descriptors.add(matrix.getRow(position, true));
+        }
+        return descriptors;
     }
 
     public static INDArray calculateAverageIndArray(List<INDArray> arrays) {
@@ -114,27 +276,19 @@ public class CNNExtractor {
     public List<INDArray> groupFramesCNN(File descriptorFile, double similarityThreshold, double samplingPercentage) throws IOException {
         List<CNNGroup> groups = new ArrayList<>();
         List<INDArray> selectedDescriptors = new ArrayList<>();
+        // Quantos quadros cada descritor representa (quadros quase duplicados descartados na decodificação)
+        int[] weights = FrameIndexFile.readWeights(descriptorFile);
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(descriptorFile))) {
-            String line;
-            StringBuilder descriptorString = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    if (descriptorString.length() > 0) {
-                        INDArray descriptor = stringToINDArray(descriptorString.toString());
-                        addToCNNGroup(groups, descriptor, similarityThreshold);
-                        descriptorString.setLength(0); // Clear the StringBuilder for the next descriptor
-                    }
-                } else {
-                    descriptorString.append(line).append("\n");
-                }
-            }
+        List<INDArray> descriptors = readDescriptors(descriptorFile);
+        for (int position = 0; position < descriptors.size(); position++) {
+            addToCNNGroup(groups, descriptors.get(position), FrameIndexFile.weightAt(weights, position), similarityThreshold);
         }
 
         for (CNNGroup group : groups) {
-            group.descriptors.sort(Comparator.comparingDouble(d -> compareFeatures(group.average, d)));
+            group.descriptors.sort(Comparator.comparingDouble(group::similarity));
             Collections.reverse(group.descriptors);  // Para ter os mais similares primeiro
-            int elementsToSample = (int) (group.descriptors.size() * (samplingPercentage / 100.0));
+            // A porcentagem é aplicada sobre os quadros representados pelo grupo, limitada aos descritores existentes
+            int elementsToSample = (int) Math.min(group.descriptors.size(), group.weight * (samplingPercentage / 100.0));
             if (elementsToSample == 0 && !group.descriptors.isEmpty()) {
                 elementsToSample = 1;
             }
@@ -145,72 +299,98 @@ public class CNNExtractor {
         return selectedDescriptors;
     }
 
-    private void addToCNNGroup(List<CNNGroup> groups, INDArray descriptor, double similarityThreshold) {
+    private void addToCNNGroup(List<CNNGroup> groups, INDArray descriptor, int weight, double similarityThreshold) {
+        float[] values = descriptor.toFloatVector();
+        double squaredNorm = VectorMath.dot(values, values);
         for (CNNGroup group : groups) {
-            if (group.isSimilar(descriptor, similarityThreshold)) {
-                group.add(descriptor);
+            if (group.isSimilar(values, squaredNorm, similarityThreshold)) {
+                group.add(descriptor, values, weight);
                 log.info("Quadro adicionado ao grupo");
                 return;
             }
         }
         log.info("Novo grupo criado");
-        groups.add(new CNNGroup(descriptor));
+        groups.add(new CNNGroup(descriptor, values, weight));
+    }
+
+    // Grupo de cada descritor pelo mesmo critério de groupFramesCNN, na ordem da lista
+    static int[] assignGroups(List<INDArray> descriptors, double similarityThreshold) {
+        List<CNNGroup> groups = new ArrayList<>();
+        int[] labels = new int[descriptors.size()];
+        for (int i = 0; i < descriptors.size(); i++) {
+            INDArray descriptor = descriptors.get(i);
+            float[] values = descriptor.toFloatVector();
+            double squaredNorm = VectorMath.dot(values, values);
+            int label = -1;
+            for (int g = 0; g < groups.size(); g++) {
+                if (groups.get(g).isSimilar(values, squaredNorm, similarityThreshold)) {
+                    groups.get(g).add(descriptor, values, 1);
+                    label = g;
+                    break;
+                }
+            }
+            if (label < 0) {
+                label = groups.size();
+                groups.add(new CNNGroup(descriptor, values, 1));
+            }
+            labels[i] = label;
+        }
+        return labels;
     }
 
     private static class CNNGroup {
         private List<INDArray> descriptors = new ArrayList<>();
-        private INDArray average;
+        // Média em float[] e sua norma ao quadrado, para comparar sem criar INDArrays
+        private float[] average;
+        private double averageSquaredNorm;
+        private int weight;
 
-        CNNGroup(INDArray descriptor) {
-            add(descriptor);
+        CNNGroup(INDArray descriptor, float[] values, int weight) {
+            add(descriptor, values, weight);
         }
 
-        void add(INDArray descriptor) {
+        void add(INDArray descriptor, float[] values, int weight) {
             descriptors.add(descriptor);
-            updateAverage(descriptor);
+            this.weight += weight;
+            updateAverage(values, weight);
         }
 
-        boolean isSimilar(INDArray descriptor, double similarityThreshold) {
+        boolean isSimilar(float[] values, double squaredNorm, double similarityThreshold) {
             if (average == null) {
                 return true;
             }
-            double similarity = compareFeatures(average, descriptor);
+            double similarity = normalizedSimilarity(VectorMath.dot(average, values), averageSquaredNorm, squaredNorm);
             log.info("Distancia: {}, similarityThreshold: {}", similarity, similarityThreshold);
             return similarity < similarityThreshold;
         }
 
-        private void updateAverage(INDArray newDescriptor) {
+        double similarity(INDArray descriptor) {
+            float[] values = descriptor.toFloatVector();
+            return normalizedSimilarity(VectorMath.dot(average, values), averageSquaredNorm, VectorMath.dot(values, values));
+        }
+
+        // O descritor entra na média com o peso dos quadros que representa; com peso 1 a conta é a de sempre
+        private void updateAverage(float[] newDescriptor, int newWeight) {
             if (average == null) {
-                average = newDescriptor.dup();
+                average = newDescriptor.clone();
             } else {
-                average = average.add(newDescriptor).div(descriptors.size());
+                for (int i = 0; i < average.length; i++) {
+                    average[i] = (average[i] + newWeight * newDescriptor[i]) / weight;
+                }
             }
+            averageSquaredNorm = VectorMath.dot(average, average);
         }
     }
 
     public List<INDArray> sampleRandomCNNDescriptors(File descriptorFile, double samplingPercentage) throws IOException {
-        List<INDArray> allDescriptors = new ArrayList<>();
+        // Lendo todos os descritores do arquivo
+        List<INDArray> allDescriptors = readDescriptors(descriptorFile);
 
-        // Lendo e parseando todos os descritores do arquivo
-        try (BufferedReader reader = new BufferedReader(new FileReader(descriptorFile))) {
-            String line;
-            StringBuilder descriptorString = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    if (descriptorString.length() > 0) {
-                        INDArray descriptor = stringToINDArray(descriptorString.toString());
-                        allDescriptors.add(descriptor);
-                        descriptorString.setLength(0);  // Limpa o StringBuilder para o próximo descritor
-                    }
-                } else {
-                    descriptorString.append(line).append("\n");
-                }
-            }
-        }
-
-        // Calculando a quantidade de descritores a serem amostrados
+        // Calculando a quantidade de descritores a serem amostrados, sobre os quadros que eles representam
         int totalDescriptors = allDescriptors.size();
-        int sampleSize = (int) (totalDescriptors * samplingPercentage / 100.0);
+        int[] weights = FrameIndexFile.readWeights(descriptorFile);
+        long totalFrames = weights == null ? totalDescriptors : Arrays.stream(weights).asLongStream().sum();
+        int sampleSize = (int) Math.min(totalDescriptors, totalFrames * samplingPercentage / 100.0);
         if (sampleSize == 0 && !allDescriptors.isEmpty()) {
             sampleSize = 1;  // Garante que pelo menos um elemento seja selecionado
         }
@@ -229,33 +409,16 @@ public class CNNExtractor {
 
 
     public List<INDArray> sampleFramesBySecondCNN(File descriptorFile, double samplingPercentage) throws IOException {
-        List<INDArray> allDescriptors = new ArrayList<>();
-
-        // Lendo e parseando todos os descritores do arquivo
-        try (BufferedReader reader = new BufferedReader(new FileReader(descriptorFile))) {
-            String line;
-            StringBuilder descriptorString = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    if (descriptorString.length() > 0) {
-                        INDArray descriptor = stringToINDArray(descriptorString.toString());
-                        allDescriptors.add(descriptor);
-                        descriptorString.setLength(0);  // Limpa o StringBuilder para o próximo descritor
-                    }
-                } else {
-                    descriptorString.append(line).append("\n");
-                }
-            }
-        }
-
         List<INDArray> sampledDescriptors = new ArrayList<>();
         int framesPerSecond = 30; // Quantidade de quadros por segundo
         int sampleSize = (int) (framesPerSecond * (samplingPercentage / 100.0));
 
-        for (int i = 0; i < allDescriptors.size(); i += framesPerSecond) {
-            int end = Math.min(i + sampleSize, allDescriptors.size());
-            for (int j = i; j < end; j++) {
-                sampledDescriptors.add(allDescriptors.get(j));
+        // Os primeiros sampleSize quadros de cada segundo do vídeo, pelo índice do quadro; só eles são copiados do arquivo
+        try (DescriptorReader reader = DescriptorReader.open(descriptorFile)) {
+            while (reader.next()) {
+                if (reader.frameIndex() % framesPerSecond < sampleSize) {
+                    sampledDescriptors.add(Nd4j.create(reader.copyFloats(), new long[]{1, reader.length()}, 'c'));
+                }
             }
         }
 
@@ -0,0 +1,58 @@
+package com.projeto.tcc.services;
+
+import org.deeplearning4j.zoo.ZooModel;
+import org.deeplearning4j.zoo.model.ResNet50;
+import org.deeplearning4j.zoo.model.SqueezeNet;
+import org.nd4j.linalg.dataset.api.preprocessor.DataNormalization;
+import org.nd4j.linalg.dataset.api.preprocessor.VGG16ImagePreProcessor;
+
+/*
+Redes do deeplearning4j-zoo usadas como extrator CNN, com a camada cuja ativação vira o descritor.
+Os nomes das camadas são os dos modelos pré-treinados (ImageNet) baixados pelo zoo.
+ */
+public enum CnnBackbone {
+    // ~15 GFLOPs por quadro, descritor de 4096 posições
+    VGG16("fc2", 224) {
+        @Override
+        ZooModel<?> zooModel() {
+            return org.deeplearning4j.zoo.model.VGG16.builder().build();
+        }
+    },
+    // ~4 GFLOPs por quadro, descritor de 2048 posições
+    RESNET50("avgpool", 224) {
+        @Override
+        ZooModel<?> zooModel() {
+            return ResNet50.builder().build();
+        }
+    },
+    // ~0,35 GFLOPs por quadro, descritor de 1000 posições (média global de conv10)
+    SQUEEZENET("global_average_pooling2d_5", 227) {
+        @Override
+        ZooModel<?> zooModel() {
+            return SqueezeNet.builder().build();
+        }
+    };
+
+    private final String embeddingLayer;
+    private final int inputSize;
+
+    CnnBackbone(String embeddingLayer, int inputSize) {
+        this.embeddingLayer = embeddingLayer;
+        this.inputSize = inputSize;
+    }
+
+    abstract ZooModel<?> zooModel();
+
+    public String getEmbeddingLayer() {
+        return embeddingLayer;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    // Os pesos ImageNet dessas redes esperam a subtração da média por canal usada na VGG16
+    public DataNormalization preProcessor() {
+        return new VGG16ImagePreProcessor();
+    }
+}
@@ -0,0 +1,123 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Compara as redes disponíveis para o extrator CNN sobre os mesmos quadros de um vídeo:
+quadros por segundo (pré-processamento + inferência) e concordância do agrupamento com a VGG16,
+medida pelo índice de Rand (fração dos pares de quadros que as duas redes colocam juntos ou separados).
+Para cada rede mostra também o tamanho do descritor gravado em float16 e int8 e a concordância do
+agrupamento feito com os descritores nessas precisões com o feito em float32.
+ */
+@Service
+@Slf4j
+public class CnnBackboneBenchmark {
+
+    @Value("${tcc.cnn.cache-modelo:D:\\UFU\\tcc_video_frames\\modelos}")
+    private String modelCacheDir;
+
+    @Value("${tcc.cnn.tamanho-lote:16}")
+    private int inferenceBatchSize;
+
+    public void run(String framesPath, double similarityThreshold, int maxFrames) throws IOException {
+        List<Mat> frames = loadEvenlySpacedFrames(new File(framesPath), maxFrames);
+        log.info("Benchmark CNN: {} quadros de {}, limiar {}", frames.size(), framesPath, similarityThreshold);
+
+        int[] referenceLabels = null;
+        try {
+            for (CnnBackbone backbone : CnnBackbone.values()) {
+                CnnEmbeddingModel model = CnnEmbeddingModel.load(backbone, new File(modelCacheDir));
+
+                long startTime = System.nanoTime();
+                List<INDArray> images = new ArrayList<>(frames.size());
+                for (Mat frame : frames) {
+                    images.add(model.preprocess(frame));
+                }
+                List<INDArray> features = model.extract(images, inferenceBatchSize);
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+
+                int[] labels = CNNExtractor.assignGroups(features, similarityThreshold);
+                if (backbone == CnnBackbone.VGG16) {
+                    referenceLabels = labels;
+                }
+                int groups = Arrays.stream(labels).max().orElse(-1) + 1;
+                log.info("{}: dimensão {}, {} quadros/s, {} grupos, concordância com VGG16 (Rand) {}",
+                        backbone, features.isEmpty() ? 0 : features.get(0).length(),
+                        String.format("%.2f", frames.size() / seconds), groups,
+                        String.format("%.3f", randIndex(referenceLabels, labels)));
+                logPrecisions(features, labels, similarityThreshold);
+            }
+        } finally {
+            for (Mat frame : frames) {
+                frame.release();
+            }
+        }
+    }
+
+    private void logPrecisions(List<INDArray> features, int[] float32Labels, double similarityThreshold) {
+        if (features.isEmpty()) {
+            return;
+        }
+        int dimension = (int) features.get(0).length();
+        int float32Bytes = DescriptorFile.recordSize(DescriptorFile.ValueType.FLOAT32, dimension);
+        for (DescriptorFile.ValueType type : new DescriptorFile.ValueType[]{DescriptorFile.ValueType.FLOAT16, DescriptorFile.ValueType.INT8}) {
+            int recordBytes = DescriptorFile.recordSize(type, dimension);
+            int[] labels = CNNExtractor.assignGroups(roundTrip(features, type), similarityThreshold);
+            log.info("  {}: {} bytes por quadro ({}% do float32), {} grupos, concordância com float32 (Rand) {}",
+                    type, recordBytes, recordBytes * 100 / float32Bytes, Arrays.stream(labels).max().orElse(-1) + 1,
+                    String.format("%.3f", randIndex(float32Labels, labels)));
+        }
+    }
+
+    // Descritores como seriam lidos de um arquivo gravado na precisão informada
+    static List<INDArray> roundTrip(List<INDArray> features, DescriptorFile.ValueType type) {
+        List<INDArray> decoded = new ArrayList<>(features.size());
+        for (INDArray feature : features) {
+            float[] values = feature.toFloatVector();
+            ByteBuffer record = ByteBuffer.allocate(DescriptorFile.recordSize(type, values.length)).order(ByteOrder.LITTLE_ENDIAN);
+            DescriptorFile.encode(type, values, record);
+            record.flip();
+            DescriptorFile.decode(type, record, values, 0, values.length);
+            decoded.add(Nd4j.create(values, feature.shape(), 'c'));
+        }
+        return decoded;
+    }
+
+    private List<Mat> loadEvenlySpacedFrames(File framesDir, int maxFrames) throws IOException {
+        List<Mat> frames = new ArrayList<>();
+        try (FrameSource frameSource = FrameSource.open(framesDir)) {
+            int step = Math.max(1, frameSource.size() / Math.max(1, maxFrames));
+            for (int position = 0; position < frameSource.size() && frames.size() < maxFrames; position += step) {
+                frames.add(frameSource.readFrameAt(position));
+            }
+        }
+        return frames;
+    }
+
+    static double randIndex(int[] a, int[] b) {
+        long agreements = 0;
+        long pairs = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int j = i + 1; j < a.length; j++) {
+                if ((a[i] == a[j]) == (b[i] == b[j])) {
+                    agreements++;
+                }
+                pairs++;
+            }
+        }
+        return pairs == 0 ? 1.0 : (double) agreements / pairs;
+    }
+}
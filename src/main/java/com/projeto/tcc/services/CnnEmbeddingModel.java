@@ -0,0 +1,125 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.datavec.image.loader.NativeImageLoader;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.transferlearning.TransferLearning;
+import org.deeplearning4j.zoo.PretrainedType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.preprocessor.DataNormalization;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Rede do zoo cortada na camada de descritor, com o pré-processamento correspondente e inferência em lote
+@Slf4j
+public class CnnEmbeddingModel {
+
+    private final CnnBackbone backbone;
+    private final ComputationGraph graph;
+    // O pré-processador não guarda estado entre chamadas; o NativeImageLoader reutiliza conversores internos e fica um por thread
+    private final DataNormalization preProcessor;
+    private final ThreadLocal<NativeImageLoader> loaders;
+
+    private CnnEmbeddingModel(CnnBackbone backbone, ComputationGraph graph) {
+        this.backbone = backbone;
+        this.graph = graph;
+        this.preProcessor = backbone.preProcessor();
+        this.loaders = ThreadLocal.withInitial(
+                () -> new NativeImageLoader(backbone.getInputSize(), backbone.getInputSize(), 3));
+    }
+
+    public static CnnEmbeddingModel load(CnnBackbone backbone) throws IOException {
+        ComputationGraph pretrained = (ComputationGraph) backbone.zooModel().initPretrained(PretrainedType.IMAGENET);
+        return new CnnEmbeddingModel(backbone, truncate(pretrained, backbone.getEmbeddingLayer()));
+    }
+
+    /*
+    Usa o grafo já cortado do cache local quando ele existe e é válido; caso contrário carrega do zoo
+    (download e checksum do zip), corta e grava o cache para as próximas execuções.
+     */
+    public static CnnEmbeddingModel load(CnnBackbone backbone, File cacheDir) throws IOException {
+        File cacheFile = CnnModelCache.cacheFile(cacheDir, backbone);
+        long startTime = System.currentTimeMillis();
+        ComputationGraph cached = CnnModelCache.load(cacheFile);
+        if (cached != null) {
+            log.info("Modelo {} carregado do cache {} em {} ms", backbone, cacheFile, System.currentTimeMillis() - startTime);
+            return new CnnEmbeddingModel(backbone, cached);
+        }
+        CnnEmbeddingModel model = load(backbone);
+        log.info("Modelo {} carregado do zoo em {} ms", backbone, System.currentTimeMillis() - startTime);
+        try {
+            CnnModelCache.save(model.graph, cacheFile);
+        } catch (IOException e) {
+            log.warn("Não foi possível gravar o cache do modelo {}: {}", backbone, e.getMessage());
+        }
+        return model;
+    }
+
+    /*
+    Remove todos os vértices posteriores à camada de descritor na ordem topológica (classificador,
+    softmax, perda), de forma que a inferência termine nela e nenhuma ativação seguinte seja calculada.
+     */
+    static ComputationGraph truncate(ComputationGraph graph, String embeddingLayer) {
+        List<String> order = graph.getConfiguration().getTopologicalOrderStr();
+        int cut = order.indexOf(embeddingLayer);
+        if (cut < 0) {
+            throw new IllegalArgumentException("Camada " + embeddingLayer + " não existe no modelo.");
+        }
+        TransferLearning.GraphBuilder builder = new TransferLearning.GraphBuilder(graph);
+        for (String vertex : order.subList(cut + 1, order.size())) {
+            builder.removeVertexAndConnections(vertex);
+        }
+        return builder.setOutputs(embeddingLayer).build();
+    }
+
+    public CnnBackbone getBackbone() {
+        return backbone;
+    }
+
+    public INDArray preprocess(Mat frame) throws IOException {
+        INDArray image = loaders.get().asMatrix(frame);
+        preProcessor.transform(image);
+        return image;
+    }
+
+    public INDArray preprocess(File imageFile) throws IOException {
+        INDArray image = loaders.get().asMatrix(imageFile);
+        preProcessor.transform(image);
+        return image;
+    }
+
+    /*
+    Empilha os quadros pré-processados ([1,3,N,N] cada) em tensores [B,3,N,N] de até batchSize quadros,
+    executa uma única inferência por lote e separa as linhas de volta em um vetor [1,D] por quadro.
+     */
+    public List<INDArray> extract(List<INDArray> frames, int batchSize) {
+        List<INDArray> featuresList = new ArrayList<>(frames.size());
+        long startTime = System.currentTimeMillis();
+        batchSize = Math.max(1, batchSize);
+        for (int start = 0; start < frames.size(); start += batchSize) {
+            List<INDArray> chunk = frames.subList(start, Math.min(frames.size(), start + batchSize));
+            INDArray batch = chunk.size() == 1 ? chunk.get(0) : Nd4j.concat(0, chunk.toArray(new INDArray[0]));
+            INDArray features;
+            // O mesmo grafo é usado pelas threads do extractFeaturesV2; a inferência já usa todos os núcleos
+            synchronized (graph) {
+                features = graph.outputSingle(false, batch);
+            }
+            if (features.rank() > 2) {
+                // Camadas de pooling entregam [B,C,1,1]
+                features = features.reshape(features.size(0), features.length() / features.size(0));
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                featuresList.add(features.getRow(i, true).dup());
+            }
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        log.info("Inferência {} ({}): {} quadros em {} ms, {} quadros/s, lote {}", backbone, backbone.getEmbeddingLayer(),
+                frames.size(), elapsed, String.format("%.1f", frames.size() * 1000.0 / elapsed), batchSize);
+        return featuresList;
+    }
+}
@@ -0,0 +1,171 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Extração CNN em duas etapas sobrepostas: várias threads leem e pré-processam os quadros (disco, decodificação
+da imagem, redimensionamento e subtração da média) enquanto a thread que chamou run() executa a inferência
+em lotes. No máximo "capacity" quadros pré-processados ficam em memória ao mesmo tempo, e os descritores
+são entregues na ordem dos quadros.
+ */
+@Slf4j
+public class CnnInferencePipeline {
+
+    // Lê e pré-processa o quadro da posição informada; chamado em paralelo pelas threads de leitura
+    public interface FrameLoader {
+        Input load(int position) throws Exception;
+    }
+
+    // Imagem pré-processada para a inferência, ou descritor já conhecido (cache) que dispensa a inferência
+    public static final class Input {
+        private final INDArray image;
+        private final INDArray features;
+
+        private Input(INDArray image, INDArray features) {
+            this.image = image;
+            this.features = features;
+        }
+
+        public static Input image(INDArray image) {
+            return new Input(image, null);
+        }
+
+        public static Input features(INDArray features) {
+            return new Input(null, features);
+        }
+    }
+
+    public interface FeatureConsumer {
+        void accept(int position, INDArray features) throws Exception;
+    }
+
+    private static final class Loaded {
+        private final int position;
+        private final Input input;
+        private final Throwable error;
+
+        private Loaded(int position, Input input, Throwable error) {
+            this.position = position;
+            this.input = input;
+            this.error = error;
+        }
+    }
+
+    private final CnnEmbeddingModel model;
+    private final int loaderThreads;
+    private final int batchSize;
+    private final int capacity;
+
+    public CnnInferencePipeline(CnnEmbeddingModel model, int loaderThreads, int batchSize, int capacity) {
+        this.model = model;
+        this.loaderThreads = Math.max(1, loaderThreads);
+        this.batchSize = Math.max(1, batchSize);
+        // Precisa caber ao menos um lote inteiro, senão a inferência nunca teria um lote completo
+        this.capacity = Math.max(this.batchSize, capacity);
+    }
+
+    public int run(int count, FrameLoader loader, FeatureConsumer consumer) throws Exception {
+        LinkedBlockingQueue<Loaded> queue = new LinkedBlockingQueue<>();
+        // A permissão é obtida antes de escolher a posição, então o quadro que a inferência espera
+        // nunca fica bloqueado atrás dos seguintes
+        Semaphore slots = new Semaphore(capacity);
+        AtomicInteger nextPosition = new AtomicInteger();
+        ExecutorService loaders = Executors.newFixedThreadPool(loaderThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < loaderThreads; t++) {
+            futures.add(loaders.submit(() -> {
+                while (true) {
+                    slots.acquire();
+                    int position = nextPosition.getAndIncrement();
+                    if (position >= count) {
+                        slots.release();
+                        return null;
+                    }
+                    try {
+                        queue.put(new Loaded(position, loader.load(position), null));
+                    } catch (Throwable e) {
+                        // Inclui Errors (falta de memória ao montar o INDArray, biblioteca nativa): sem o registro
+                        // na fila a inferência esperaria por esta posição para sempre
+                        queue.put(new Loaded(position, null, e));
+                        return null;
+                    }
+                }
+            }));
+        }
+
+        long startTime = System.currentTimeMillis();
+        long waitingNanos = 0;
+        int precomputed = 0;
+        try {
+            Map<Integer, Input> pending = new HashMap<>();
+            List<INDArray> batch = new ArrayList<>(batchSize);
+            int emitted = 0;
+            while (emitted < count) {
+                // Monta o lote com as próximas posições em ordem, esperando pelas que ainda não ficaram prontas
+                while (batch.size() < batchSize && emitted + batch.size() < count) {
+                    int wanted = emitted + batch.size();
+                    Input input = pending.remove(wanted);
+                    if (input == null) {
+                        long waitStart = System.nanoTime();
+                        Loaded loaded = queue.take();
+                        waitingNanos += System.nanoTime() - waitStart;
+                        if (loaded.error instanceof Exception) {
+                            throw (Exception) loaded.error;
+                        }
+                        if (loaded.error instanceof Error) {
+                            throw (Error) loaded.error;
+                        }
+                        if (loaded.error != null) {
+                            throw new Exception("Falha ao carregar o quadro " + loaded.position + ".", loaded.error);
+                        }
+                        pending.put(loaded.position, loaded.input);
+                        continue;
+                    }
+                    if (input.features != null) {
+                        if (!batch.isEmpty()) {
+                            // Os quadros anteriores do lote precisam ser entregues antes deste
+                            pending.put(wanted, input);
+                            break;
+                        }
+                        consumer.accept(emitted++, input.features);
+                        slots.release();
+                        precomputed++;
+                        continue;
+                    }
+                    batch.add(input.image);
+                }
+
+                if (!batch.isEmpty()) {
+                    List<INDArray> features = model.extract(batch, batchSize);
+                    for (INDArray feature : features) {
+                        consumer.accept(emitted++, feature);
+                    }
+                    slots.release(batch.size());
+                    batch.clear();
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            loaders.shutdownNow();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        log.info("Pipeline CNN: {} quadros em {} ms ({} quadros/s), {} sem inferência, {} threads de leitura, inferência esperou {} ms pelos quadros",
+                count, elapsed, String.format("%.1f", count * 1000.0 / elapsed), precomputed, loaderThreads, waitingNanos / 1_000_000);
+        return count;
+    }
+}
@@ -0,0 +1,141 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/*
+Cache local do grafo de inferência já cortado na camada de descritor, em um único arquivo:
+- cabeçalho (little-endian): MAGIC, VERSION, tamanho do JSON, quantidade de parâmetros, CRC32C dos parâmetros;
+- configuração do grafo em JSON (UTF-8);
+- parâmetros float32 little-endian, alinhados em 64 bytes.
+Na leitura os parâmetros são mapeados em memória e copiados direto do mapeamento para o vetor de
+parâmetros do grafo, sem passar pelo zip do zoo, por arquivos temporários nem pela desserialização do zoo.
+ */
+@Slf4j
+public final class CnnModelCache {
+
+    private static final int MAGIC = 0x47434354; // "TCCG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ALIGNMENT = 64;
+
+    private CnnModelCache() {
+    }
+
+    public static File cacheFile(File cacheDir, CnnBackbone backbone) {
+        return new File(cacheDir, backbone.name().toLowerCase() + "-" + backbone.getEmbeddingLayer() + ".grafo");
+    }
+
+    // Grafo do cache, ou null se o arquivo não existir ou não passar na validação
+    public static ComputationGraph load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                log.warn("Cache de modelo inválido, ignorado: {}", file);
+                return null;
+            }
+            int jsonLength = header.getInt();
+            long paramCount = header.getLong();
+            long expectedChecksum = header.getLong();
+            long paramsOffset = align(HEADER_SIZE + (long) jsonLength);
+            if (paramCount > Integer.MAX_VALUE || channel.size() != paramsOffset + paramCount * Float.BYTES) {
+                log.warn("Cache de modelo com tamanho inconsistente, ignorado: {}", file);
+                return null;
+            }
+
+            ByteBuffer json = ByteBuffer.allocate(jsonLength);
+            while (json.hasRemaining() && channel.read(json, HEADER_SIZE + json.position()) >= 0) {
+            }
+            ComputationGraphConfiguration configuration = ComputationGraphConfiguration.fromJson(
+                    new String(json.array(), StandardCharsets.UTF_8));
+
+            MappedByteBuffer params = channel.map(FileChannel.MapMode.READ_ONLY, paramsOffset, paramCount * Float.BYTES);
+            params.order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C crc = new CRC32C();
+            crc.update(params.duplicate());
+            if (crc.getValue() != expectedChecksum) {
+                log.warn("Checksum do cache de modelo não confere, ignorado: {}", file);
+                return null;
+            }
+
+            DataBuffer buffer = Nd4j.createBuffer(params, DataType.FLOAT, (int) paramCount);
+            INDArray flatParams = Nd4j.create(buffer, new long[]{1, paramCount});
+            ComputationGraph graph = new ComputationGraph(configuration);
+            graph.init(flatParams, false);
+            return graph;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Falha ao ler o cache de modelo {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    // Grava em arquivo temporário e renomeia, para que uma gravação interrompida nunca pareça um cache válido
+    public static void save(ComputationGraph graph, File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Não foi possível criar o diretório do cache de modelos.");
+        }
+        byte[] json = graph.getConfiguration().toJson().getBytes(StandardCharsets.UTF_8);
+        INDArray params = graph.params();
+        if (params.dataType() != DataType.FLOAT) {
+            params = params.castTo(DataType.FLOAT);
+        }
+        float[] values = params.data().asFloat();
+
+        ByteBuffer data = ByteBuffer.allocate(values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        data.asFloatBuffer().put(values);
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(json.length);
+        header.putLong(values.length);
+        header.putLong(crc.getValue());
+        header.position(HEADER_SIZE).flip();
+
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            writeFully(channel, ByteBuffer.wrap(json), HEADER_SIZE);
+            writeFully(channel, data, align(HEADER_SIZE + (long) json.length));
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
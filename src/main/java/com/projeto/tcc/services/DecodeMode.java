@@ -0,0 +1,26 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+
+// Quais quadros o decodificador do FFmpeg deve de fato decodificar (opção skip_frame do codec)
+public enum DecodeMode {
+    // Todos os quadros
+    FULL("default"),
+    // Descarta os quadros que não servem de referência para outros (em geral os B-frames)
+    SKIP_NON_REFERENCE("noref"),
+    // Somente os quadros-chave (I-frames)
+    KEY_FRAMES_ONLY("nokey");
+
+    private final String skipFrame;
+
+    DecodeMode(String skipFrame) {
+        this.skipFrame = skipFrame;
+    }
+
+    // Deve ser chamado antes de grabber.start()
+    public void apply(FFmpegFrameGrabber grabber) {
+        if (this != FULL) {
+            grabber.setVideoOption("skip_frame", skipFrame);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+public class DecodedFrame {
+
+    // Marcador de fim de fluxo para as filas entre o decodificador e os extratores
+    public static final DecodedFrame END = new DecodedFrame(-1, -1, false, null);
+
+    private final int frameIndex;
+    private final long timestamp;
+    private final boolean keyFrame;
+    private final Mat mat;
+
+    public DecodedFrame(int frameIndex, long timestamp, boolean keyFrame, Mat mat) {
+        this.frameIndex = frameIndex;
+        this.timestamp = timestamp;
+        this.keyFrame = keyFrame;
+        this.mat = mat;
+    }
+
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isKeyFrame() {
+        return keyFrame;
+    }
+
+    public Mat getMat() {
+        return mat;
+    }
+
+    public boolean isEnd() {
+        return this == END;
+    }
+}
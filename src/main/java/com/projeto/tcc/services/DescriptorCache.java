@@ -0,0 +1,295 @@
+package com.projeto.tcc.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/*
+Cache em disco dos descritores, endereçado pelo conteúdo: a chave é um hash de 128 bits dos pixels do
+quadro que entra no extrator (já pré-processado para HOG e ORB, o quadro original para a CNN) combinado
+com a configuração do extrator. Quadros idênticos em clipes sobrepostos ou em cópias do mesmo material
+reaproveitam o descritor já calculado.
+Cada entrada é um arquivo; o índice em memória mantém a ordem de uso (LRU) e, quando o total passa do
+limite, as entradas usadas há mais tempo são apagadas. A data de modificação dos arquivos guarda a ordem
+de uso entre execuções.
+ */
+@Service
+@Slf4j
+public class DescriptorCache {
+
+    private static final String EXTENSION = ".desc";
+    private static final long C1 = 0x9E3779B97F4A7C15L;
+    private static final long C2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long C3 = 0x165667B19E3779F9L;
+    private static final long C4 = 0xD6E8FEB86659FD93L;
+
+    // Entrada do cache: hash do quadro + configuração do extrator
+    public static final class Key {
+        private final String name;
+
+        private Key(String name) {
+            this.name = name;
+        }
+    }
+
+    @Value("${tcc.cache.ativo:true}")
+    private boolean enabled;
+
+    @Value("${tcc.cache.diretorio:D:\\UFU\\tcc_video_frames\\cache_descritores}")
+    private String directory;
+
+    @Value("${tcc.cache.tamanho-maximo-mb:2048}")
+    private long maxSizeMb;
+
+    private File cacheDir;
+    private long maxBytes;
+    // Nome da entrada -> tamanho em bytes, na ordem do uso menos recente para o mais recente
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void loadIndex() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        cacheDir = new File(directory);
+        maxBytes = maxSizeMb * 1024 * 1024;
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IOException("Não foi possível criar o diretório do cache de descritores.");
+        }
+        List<Path> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(cacheDir.toPath())) {
+            files.filter(path -> path.getFileName().toString().endsWith(EXTENSION)).forEach(entries::add);
+        }
+        entries.sort(Comparator.comparingLong(path -> path.toFile().lastModified()));
+        synchronized (index) {
+            for (Path entry : entries) {
+                long size = entry.toFile().length();
+                index.put(entry.getFileName().toString(), size);
+                totalBytes += size;
+            }
+            evictIfNeeded();
+        }
+        log.info("Cache de descritores em {}: {} entradas, {} MB (limite {} MB)", cacheDir, index.size(),
+                totalBytes / (1024 * 1024), maxSizeMb);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Chave do quadro para a configuração informada; null com o cache desligado
+    public Key key(Mat frame, String configuration) {
+        if (!enabled) {
+            return null;
+        }
+        Mat continuous = frame.isContinuous() ? frame : frame.clone();
+        try {
+            long length = continuous.total() * continuous.elemSize();
+            ByteBuffer pixels = continuous.data().capacity(length).asByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            long[] hash = hash128(pixels, configuration.hashCode() ^ ((long) frame.rows() << 32) ^ ((long) frame.cols() << 16) ^ frame.type());
+            byte[] configurationBytes = configuration.getBytes(StandardCharsets.UTF_8);
+            long configurationHash = hash128(ByteBuffer.wrap(configurationBytes).order(ByteOrder.LITTLE_ENDIAN), 0)[0];
+            return new Key(String.format("%08x-%016x%016x", (int) configurationHash, hash[0], hash[1]) + EXTENSION);
+        } finally {
+            if (continuous != frame) {
+                continuous.release();
+            }
+        }
+    }
+
+    public byte[] get(Key key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (index) {
+            if (index.get(key.name) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        File file = entryFile(key.name);
+        try {
+            byte[] value = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return value;
+        } catch (IOException e) {
+            // Entrada apagada por fora ou ilegível: passa a ser uma falta
+            synchronized (index) {
+                Long size = index.remove(key.name);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(Key key, byte[] value) {
+        if (key == null) {
+            return;
+        }
+        File file = entryFile(key.name);
+        try {
+            File dir = file.getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Não foi possível criar " + dir);
+            }
+            // Grava ao lado e renomeia, para que outra thread nunca leia uma entrada pela metade
+            File tmp = new File(dir, key.name + "." + Thread.currentThread().getId() + ".tmp");
+            Files.write(tmp.toPath(), value);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Não foi possível gravar no cache de descritores: {}", e.getMessage());
+            return;
+        }
+        stores.incrementAndGet();
+        synchronized (index) {
+            Long previous = index.put(key.name, (long) value.length);
+            totalBytes += value.length - (previous == null ? 0 : previous);
+            evictIfNeeded();
+        }
+    }
+
+    public float[] getFloats(Key key) {
+        byte[] value = get(key);
+        if (value == null) {
+            return null;
+        }
+        float[] floats = new float[value.length / Float.BYTES];
+        ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(floats);
+        return floats;
+    }
+
+    public void putFloats(Key key, float[] floats) {
+        if (key == null) {
+            return;
+        }
+        ByteBuffer value = ByteBuffer.allocate(floats.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        value.asFloatBuffer().put(floats);
+        put(key, value.array());
+    }
+
+    // Linhas, colunas e tipo do Mat seguidos dos bytes dos descritores
+    public OrbDescriptors getOrb(Key key) {
+        byte[] value = get(key);
+        if (value == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        int type = buffer.getInt();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new OrbDescriptors(rows, cols, type, data);
+    }
+
+    public void putOrb(Key key, OrbDescriptors descriptors) {
+        if (key == null) {
+            return;
+        }
+        ByteBuffer value = ByteBuffer.allocate(3 * Integer.BYTES + descriptors.getData().length).order(ByteOrder.LITTLE_ENDIAN);
+        value.putInt(descriptors.getRows()).putInt(descriptors.getCols()).putInt(descriptors.getType()).put(descriptors.getData());
+        put(key, value.array());
+    }
+
+    public void logStatistics() {
+        if (!enabled) {
+            return;
+        }
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        synchronized (index) {
+            log.info("Cache de descritores: {} acertos em {} consultas ({}%), {} gravações, {} removidas, {} entradas, {} MB",
+                    hitCount, lookups, lookups == 0 ? 0 : String.format("%.1f", hitCount * 100.0 / lookups),
+                    stores.get(), evictions.get(), index.size(), totalBytes / (1024 * 1024));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        logStatistics();
+    }
+
+    // Chamado com o lock do índice
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            entryFile(entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Subdiretórios pelos 2 primeiros dígitos do hash do quadro, para não concentrar milhares de arquivos
+    private File entryFile(String name) {
+        return new File(new File(cacheDir, name.substring(9, 11)), name);
+    }
+
+    /*
+    Hash não criptográfico de 128 bits em duas faixas de 64 bits, lendo 8 bytes por vez,
+    com a finalização do MurmurHash3 em cada faixa.
+     */
+    static long[] hash128(ByteBuffer data, long seed) {
+        long h1 = seed ^ C1;
+        long h2 = seed ^ C2;
+        long length = data.remaining();
+        while (data.remaining() >= Long.BYTES) {
+            long value = data.getLong();
+            h1 = Long.rotateLeft(h1 ^ (value * C3), 31) * C1;
+            h2 = Long.rotateLeft(h2 ^ (value * C4), 27) * C2 + h1;
+        }
+        long tail = 0;
+        for (int shift = 0; data.hasRemaining(); shift += 8) {
+            tail |= (data.get() & 0xFFL) << shift;
+        }
+        h1 = Long.rotateLeft(h1 ^ (tail * C3), 31) * C1 ^ length;
+        h2 = Long.rotateLeft(h2 ^ (tail * C4), 27) * C2 ^ length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB93FE1A85EC5L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
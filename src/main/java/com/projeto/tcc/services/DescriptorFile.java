@@ -0,0 +1,432 @@
+package com.projeto.tcc.services;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8U;
+
+/*
+Arquivo binário de descritores de tamanho fixo (little-endian):
+- cabeçalho: MAGIC, VERSION, extrator (8 bytes ASCII), tipo dos valores, dimensão, quantidade de
+  registros (-1 enquanto a gravação não terminou), tamanho do cabeçalho e metadados em UTF-8;
+- registros contíguos: índice do quadro no vídeo (int32) seguido de "dimensão" valores.
+Como todos os registros têm o mesmo tamanho, o leitor mapeia o arquivo em memória e acessa
+qualquer descritor pela posição, sem converter texto.
+Descritores ORB (UINT8) têm uma quantidade variável de keypoints por quadro: o registro é o índice do
+quadro, a quantidade de keypoints (int32) e os bytes crus, "dimensão" bytes por keypoint. Ao abrir,
+o leitor percorre os cabeçalhos dos registros uma vez para montar a tabela de posições.
+Descritores em ponto flutuante podem ser gravados com menos precisão: FLOAT16 (meia precisão IEEE) ou
+INT8, quantizado por vetor (o registro leva a escala float32 logo após o índice do quadro, e cada valor
+é round(v / escala), com escala = max|v| / 127).
+ */
+public final class DescriptorFile {
+
+    public static final String EXTENSION = ".bin";
+
+    private static final int MAGIC = 0x44434354; // "TCCD"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 40;
+    private static final int COUNT_OFFSET = 24;
+
+    public enum ValueType {
+        FLOAT32(1, Float.BYTES),
+        UINT8(2, Byte.BYTES),
+        FLOAT16(3, Short.BYTES),
+        INT8(4, Byte.BYTES);
+
+        private final int code;
+        private final int size;
+
+        ValueType(int code, int size) {
+            this.code = code;
+            this.size = size;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        // Registros com quantidade variável de linhas (keypoints)
+        public boolean isVariable() {
+            return this == UINT8;
+        }
+
+        // Tipos que guardam vetores float (possivelmente com perda de precisão)
+        public boolean isFloat() {
+            return this == FLOAT32 || this == FLOAT16 || this == INT8;
+        }
+
+        static ValueType fromCode(int code) {
+            for (ValueType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Tipo de valor desconhecido no arquivo de descritores: " + code);
+        }
+    }
+
+    private DescriptorFile() {
+    }
+
+    public static boolean isBinary(File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    // Tamanho de um registro de tamanho fixo
+    public static int recordSize(ValueType type, int dimension) {
+        return Integer.BYTES + (type == ValueType.INT8 ? Float.BYTES : 0) + dimension * type.getSize();
+    }
+
+    // Tamanho de um registro de tamanho variável com "rows" linhas
+    public static long recordSize(ValueType type, int dimension, int rows) {
+        return 2L * Integer.BYTES + (long) rows * dimension * type.getSize();
+    }
+
+    // Cabeçalho completo, alinhado em 8 bytes, para o início de um arquivo novo
+    static byte[] header(String extractorName, ValueType type, int dimension, String metadata) {
+        byte[] metadataBytes = metadata == null ? new byte[0] : metadata.getBytes(StandardCharsets.UTF_8);
+        int headerSize = (FIXED_HEADER_SIZE + metadataBytes.length + 7) / 8 * 8;
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.put(Arrays.copyOf(extractorName.getBytes(StandardCharsets.US_ASCII), 8));
+        header.putInt(type.code);
+        header.putInt(dimension);
+        header.putLong(-1L);
+        header.putInt(headerSize);
+        header.putInt(metadataBytes.length);
+        header.put(metadataBytes);
+        return header.array();
+    }
+
+    // Grava a quantidade de registros no cabeçalho de um arquivo já fechado, a partir do seu tamanho
+    static void writeCount(File file) throws IOException {
+        int records;
+        try (Reader reader = open(file)) {
+            records = reader.size();
+        }
+        writeCount(file, records);
+    }
+
+    static void writeCount(File file, long count) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putLong(count).flip();
+            channel.write(buffer, COUNT_OFFSET);
+        }
+    }
+
+    // Escreve o vetor (escala incluída, no INT8) na posição atual do buffer little-endian
+    public static void encode(ValueType type, float[] values, ByteBuffer target) {
+        encode(type, values, 0, values.length, target);
+    }
+
+    // Escreve values[offset..offset + count)
+    public static void encode(ValueType type, float[] values, int offset, int count, ByteBuffer target) {
+        int end = offset + count;
+        switch (type) {
+            case FLOAT32:
+                for (int i = offset; i < end; i++) {
+                    target.putFloat(values[i]);
+                }
+                break;
+            case FLOAT16:
+                for (int i = offset; i < end; i++) {
+                    target.putShort(floatToHalf(values[i]));
+                }
+                break;
+            case INT8:
+                float maxAbs = 0;
+                for (int i = offset; i < end; i++) {
+                    maxAbs = Math.max(maxAbs, Math.abs(values[i]));
+                }
+                float scale = maxAbs / 127f;
+                target.putFloat(scale);
+                for (int i = offset; i < end; i++) {
+                    target.put(scale == 0 ? 0 : (byte) Math.max(-127, Math.min(127, Math.round(values[i] / scale))));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Tipo " + type + " não guarda vetores float.");
+        }
+    }
+
+    // Lê "count" valores da posição atual do buffer para target[offset..]
+    public static void decode(ValueType type, ByteBuffer source, float[] target, int offset, int count) {
+        switch (type) {
+            case FLOAT32:
+                source.asFloatBuffer().get(target, offset, count);
+                break;
+            case FLOAT16:
+                for (int i = 0; i < count; i++) {
+                    target[offset + i] = halfToFloat(source.getShort());
+                }
+                break;
+            case INT8:
+                float scale = source.getFloat();
+                for (int i = 0; i < count; i++) {
+                    target[offset + i] = source.get() * scale;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Tipo " + type + " não guarda vetores float.");
+        }
+    }
+
+    // Conversão para meia precisão com arredondamento para o par mais próximo
+    static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent == 0xFF) {
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (halfExponent <= 0) {
+            // Subnormal em meia precisão
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        // O vai-um pode passar para o expoente, inclusive até infinito, que é o resultado correto
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    static float halfToFloat(short value) {
+        int bits = value & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float subnormal = mantissa * 0x1p-24f;
+            return sign != 0 ? -subnormal : subnormal;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    public static Reader open(File file) throws IOException {
+        return new Reader(file);
+    }
+
+    public static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final String extractorName;
+        private final ValueType type;
+        private final int dimension;
+        private final String metadata;
+        private final long headerSize;
+        private final int size;
+        // Registros fixos: regiões mapeadas com um número inteiro de registros cada, para arquivos maiores que 2 GB
+        private int recordSize;
+        private int recordsPerRegion;
+        // Registros variáveis: região e deslocamento de cada registro
+        private int[] recordRegions;
+        private int[] recordOffsets;
+        private final MappedByteBuffer[] regions;
+
+        private Reader(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                }
+                header.flip();
+                if (header.remaining() < FIXED_HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new IOException("Arquivo de descritores binário inválido: " + file);
+                }
+                byte[] name = new byte[8];
+                header.get(name);
+                extractorName = new String(name, StandardCharsets.US_ASCII).trim();
+                type = ValueType.fromCode(header.getInt());
+                dimension = header.getInt();
+                long declaredCount = header.getLong();
+                headerSize = header.getInt();
+                ByteBuffer metadataBytes = ByteBuffer.allocate(header.getInt());
+                channel.read(metadataBytes, FIXED_HEADER_SIZE);
+                metadata = new String(metadataBytes.array(), StandardCharsets.UTF_8);
+
+                // Um registro incompleto no fim (gravação interrompida) é ignorado
+                regions = type.isVariable() ? mapVariableRecords() : mapFixedRecords();
+                size = type.isVariable() ? recordOffsets.length : (int) ((channel.size() - headerSize) / recordSize);
+                if (declaredCount >= 0 && declaredCount != size) {
+                    throw new IOException("Arquivo de descritores com " + size + " registros, cabeçalho indica " + declaredCount + ": " + file);
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private MappedByteBuffer[] mapFixedRecords() throws IOException {
+            recordSize = recordSize(type, dimension);
+            long records = (channel.size() - headerSize) / recordSize;
+            recordsPerRegion = Math.max(1, Integer.MAX_VALUE / recordSize);
+            MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((records + recordsPerRegion - 1) / recordsPerRegion)];
+            for (int i = 0; i < mapped.length; i++) {
+                long first = (long) i * recordsPerRegion;
+                long length = Math.min(recordsPerRegion, records - first) * recordSize;
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, headerSize + first * recordSize, length);
+                mapped[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return mapped;
+        }
+
+        // Mapeia o arquivo em regiões que começam sempre no início de um registro
+        private MappedByteBuffer[] mapVariableRecords() throws IOException {
+            List<MappedByteBuffer> mapped = new ArrayList<>();
+            int[] regionOfRecord = new int[1024];
+            int[] offsetOfRecord = new int[1024];
+            int records = 0;
+            long position = headerSize;
+            long fileSize = channel.size();
+            while (position < fileSize) {
+                long length = Math.min(Integer.MAX_VALUE, fileSize - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                region.order(ByteOrder.LITTLE_ENDIAN);
+                long offset = 0;
+                while (offset + 2L * Integer.BYTES <= length) {
+                    int rows = region.getInt((int) offset + Integer.BYTES);
+                    long next = offset + recordSize(type, dimension, rows);
+                    if (rows < 0 || next > length) {
+                        break;
+                    }
+                    if (records == regionOfRecord.length) {
+                        regionOfRecord = Arrays.copyOf(regionOfRecord, records * 2);
+                        offsetOfRecord = Arrays.copyOf(offsetOfRecord, records * 2);
+                    }
+                    regionOfRecord[records] = mapped.size();
+                    offsetOfRecord[records] = (int) offset;
+                    records++;
+                    offset = next;
+                }
+                if (offset == 0) {
+                    break;
+                }
+                mapped.add(region);
+                position += offset;
+            }
+            recordRegions = Arrays.copyOf(regionOfRecord, records);
+            recordOffsets = Arrays.copyOf(offsetOfRecord, records);
+            return mapped.toArray(new MappedByteBuffer[0]);
+        }
+
+        public String getExtractorName() {
+            return extractorName;
+        }
+
+        public ValueType getType() {
+            return type;
+        }
+
+        public int getDimension() {
+            return dimension;
+        }
+
+        public String getMetadata() {
+            return metadata;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int frameIndexAt(int position) {
+            return region(position).getInt(offset(position));
+        }
+
+        // Quantidade de keypoints do registro (registros variáveis)
+        public int rowsAt(int position) {
+            return region(position).getInt(offset(position) + Integer.BYTES);
+        }
+
+        // Descritores ORB do registro, copiados dos bytes mapeados
+        public OrbDescriptors readOrb(int position) {
+            int rows = rowsAt(position);
+            byte[] data = new byte[rows * dimension];
+            readOrb(position, data);
+            // Quadro sem keypoints: o mesmo Mat vazio que o extrator devolve
+            return new OrbDescriptors(rows, rows == 0 ? 0 : dimension, CV_8U, data);
+        }
+
+        // Bytes dos keypoints do registro em target[0..linhas x dimensão)
+        public void readOrb(int position, byte[] target) {
+            ByteBuffer record = region(position).duplicate();
+            record.position(offset(position) + 2 * Integer.BYTES);
+            record.get(target, 0, rowsAt(position) * dimension);
+        }
+
+        public float[] readFloats(int position) {
+            float[] values = new float[dimension];
+            readFloats(position, values);
+            return values;
+        }
+
+        public void readFloats(int position, float[] target) {
+            readFloats(position, target, 0);
+        }
+
+        // Descritor da posição em target[offset..offset + dimensão)
+        public void readFloats(int position, float[] target, int offset) {
+            ByteBuffer record = region(position).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            record.position(offset(position) + Integer.BYTES);
+            decode(type, record, target, offset, dimension);
+        }
+
+        // Todos os descritores, um após o outro, num único vetor (linhas de uma matriz size x dimensão)
+        public float[] readAllFloats() {
+            float[] values = new float[Math.multiplyExact(size, dimension)];
+            for (int position = 0; position < size; position++) {
+                readFloats(position, values, position * dimension);
+            }
+            return values;
+        }
+
+        private MappedByteBuffer region(int position) {
+            if (position < 0 || position >= size) {
+                throw new IndexOutOfBoundsException("Descritor " + position + " fora do arquivo (" + size + ").");
+            }
+            return recordRegions != null ? regions[recordRegions[position]] : regions[position / recordsPerRegion];
+        }
+
+        private int offset(int position) {
+            return recordOffsets != null ? recordOffsets[position] : (position % recordsPerRegion) * recordSize;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.projeto.tcc.services;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+Destino dos descritores de uma extração. No formato texto cada descritor é um bloco seguido de uma linha
+em branco, como sempre foi, precedido da linha "# quadro=N" com o índice do quadro no vídeo (linhas
+começadas por '#' são ignoradas pelos leitores antigos); no formato binário (DescriptorFile) cada descritor
+é um registro com o índice do quadro: de tamanho fixo para HOG e CNN (esta em float32, float16 ou int8),
+com os bytes crus de cada keypoint para o ORB.
+ */
+public class DescriptorOutput implements Closeable, Flushable {
+
+    public static final String TEXT_FRAME_PREFIX = "# quadro=";
+
+    private final File file;
+    private final OutputStream stream;
+    private final BufferedWriter text;
+    private final String extractorName;
+    private final DescriptorFile.ValueType type;
+    private final String textHeader;
+    private int dimension;
+    private ByteBuffer record;
+    // Cabeçalho binário ainda não escrito, à espera da dimensão do primeiro descritor
+    private boolean headerPending;
+
+    /*
+    stream já posicionado no fim do arquivo; newFile indica que o cabeçalho ainda precisa ser escrito.
+    type e dimension só são usados no formato binário; com dimension <= 0 a dimensão é a do primeiro
+    descritor gravado (CNN, cuja dimensão depende da rede). textHeader (opcional) é a primeira linha do
+    arquivo texto ou os metadados do cabeçalho binário.
+     */
+    DescriptorOutput(File file, OutputStream stream, String extractorName, DescriptorFile.ValueType type, int dimension,
+                     String textHeader, boolean newFile) throws IOException {
+        this.file = file;
+        this.stream = new BufferedOutputStream(stream, 1 << 16);
+        this.extractorName = extractorName;
+        this.type = type;
+        this.textHeader = textHeader;
+        this.dimension = dimension;
+        if (DescriptorFile.isBinary(file)) {
+            this.text = null;
+            if (!newFile) {
+                // Arquivo retomado: a quantidade volta a ser desconhecida até o fechamento e a dimensão é a do cabeçalho
+                DescriptorFile.writeCount(file, -1);
+                try (DescriptorFile.Reader reader = DescriptorFile.open(file)) {
+                    if (reader.getType() != type) {
+                        throw new IOException("Arquivo " + file.getName() + " gravado como " + reader.getType() + ", esperado " + type + ".");
+                    }
+                    this.dimension = reader.getDimension();
+                }
+                allocateRecord();
+            } else if (this.dimension > 0) {
+                writeHeader();
+            } else {
+                headerPending = true;
+            }
+        } else {
+            this.text = new BufferedWriter(new OutputStreamWriter(this.stream, StandardCharsets.UTF_8));
+            if (newFile && textHeader != null) {
+                this.text.write(textHeader);
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        stream.write(DescriptorFile.header(extractorName, type, dimension, textHeader));
+        headerPending = false;
+        allocateRecord();
+    }
+
+    // Registros variáveis: só o cabeçalho do registro passa pelo buffer
+    private void allocateRecord() {
+        record = ByteBuffer.allocate(type.isVariable() ? 2 * Integer.BYTES : DescriptorFile.recordSize(type, dimension))
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static String fileName(String extractorName, boolean binary) {
+        return "descritores" + extractorName + (binary ? DescriptorFile.EXTENSION : ".txt");
+    }
+
+    // Arquivo novo no diretório de descritores
+    public static DescriptorOutput create(File descriptorsDir, String extractorName, boolean binary, DescriptorFile.ValueType type,
+                                          int dimension, String textHeader) throws IOException {
+        File file = new File(descriptorsDir, fileName(extractorName, binary));
+        return new DescriptorOutput(file, new FileOutputStream(file), extractorName, type, dimension, textHeader, true);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isBinary() {
+        return text == null;
+    }
+
+    public void writeFloats(int frameIndex, float[] descriptor) throws IOException {
+        if (headerPending) {
+            dimension = descriptor.length;
+        }
+        if (text == null && descriptor.length != dimension) {
+            throw new IllegalArgumentException("Descritor com " + descriptor.length + " valores, esperado " + dimension + ".");
+        }
+        writeFloats(frameIndex, descriptor, 0, descriptor.length);
+    }
+
+    // Descritor em values[offset..offset + dimensão), por exemplo um trecho do vetor de um lote inteiro
+    public void writeFloats(int frameIndex, float[] values, int offset) throws IOException {
+        if (dimension <= 0) {
+            throw new IllegalStateException("Dimensão dos descritores desconhecida: " + file.getName());
+        }
+        writeFloats(frameIndex, values, offset, dimension);
+    }
+
+    private void writeFloats(int frameIndex, float[] values, int offset, int length) throws IOException {
+        if (text != null) {
+            writeText(frameIndex, Arrays.toString(Arrays.copyOfRange(values, offset, offset + length)));
+            return;
+        }
+        if (headerPending) {
+            writeHeader();
+        }
+        if (!type.isFloat()) {
+            throw new IllegalArgumentException("Arquivo " + type + " não guarda vetores float.");
+        }
+        record.clear();
+        record.putInt(frameIndex);
+        DescriptorFile.encode(type, values, offset, length, record);
+        stream.write(record.array());
+    }
+
+    // Descritor CNN copiado de uma vez do buffer do INDArray; no formato texto, o CSV de sempre
+    public void writeFeatures(int frameIndex, INDArray features) throws IOException {
+        if (text != null) {
+            writeText(frameIndex, FrameExtractor.indArrayToString(features));
+            return;
+        }
+        writeFloats(frameIndex, features.toFloatVector());
+    }
+
+    public void writeOrb(int frameIndex, OrbDescriptors descriptors) throws IOException {
+        if (text != null) {
+            writeText(frameIndex, FrameExtractor.orbDescriptorsToString(descriptors));
+            return;
+        }
+        if (type != DescriptorFile.ValueType.UINT8 || (descriptors.getRows() > 0 && descriptors.getCols() != dimension)) {
+            throw new IllegalArgumentException("Descritores ORB com " + descriptors.getCols() + " bytes por keypoint, esperado " + dimension + ".");
+        }
+        record.clear();
+        record.putInt(frameIndex);
+        record.putInt(descriptors.getRows());
+        stream.write(record.array());
+        stream.write(descriptors.getData());
+    }
+
+    // Descritor já formatado como texto (formato texto apenas)
+    public void writeText(int frameIndex, String descriptor) throws IOException {
+        if (text == null) {
+            throw new IllegalStateException("Arquivo binário não aceita descritores em texto: " + file.getName());
+        }
+        text.write(TEXT_FRAME_PREFIX);
+        text.write(Integer.toString(frameIndex));
+        text.write('\n');
+        text.write(descriptor);
+        text.write("\n\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (text != null) {
+            text.flush();
+        }
+        stream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (text != null) {
+            text.close();
+        } else {
+            if (headerPending) {
+                // Nenhum descritor gravado: o arquivo fica só com o cabeçalho
+                writeHeader();
+            }
+            stream.close();
+            DescriptorFile.writeCount(file);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8U;
+
+/*
+Leitura sequencial dos descritores de um arquivo, em texto ou binário (DescriptorFile), um descritor por vez.
+next() avança para o próximo; os valores do descritor atual ficam em vetores reaproveitados (values, bytes),
+válidos até a próxima chamada, e quem precisa guardá-los faz uma cópia (copyFloats, toOrbDescriptors, toMat).
+No formato texto os números são lidos direto do buffer de caracteres, sem criar Strings nem expressões
+regulares, de modo que arquivos de vários GB são percorridos com memória constante.
+ */
+public abstract class DescriptorReader implements Closeable {
+
+    // Descritor atual: floats (HOG e CNN) ou bytes dos keypoints (ORB)
+    protected float[] values = new float[0];
+    protected int length;
+    protected byte[] bytes = new byte[0];
+    protected boolean orb;
+    protected int orbRows;
+    protected int orbCols;
+    protected int orbType;
+    protected int position = -1;
+    protected int frameIndex = -1;
+
+    public static DescriptorReader open(File file) throws IOException {
+        if (DescriptorFile.isBinary(file)) {
+            return new Binary(DescriptorFile.open(file));
+        }
+        return new Text(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    // Índice do quadro de cada descritor do arquivo, na ordem dos descritores
+    public static int[] readFrameIndices(File file) throws IOException {
+        if (DescriptorFile.isBinary(file)) {
+            // Só o início de cada registro, sem decodificar os valores
+            try (DescriptorFile.Reader reader = DescriptorFile.open(file)) {
+                int[] frameIndices = new int[reader.size()];
+                for (int position = 0; position < frameIndices.length; position++) {
+                    frameIndices[position] = reader.frameIndexAt(position);
+                }
+                return frameIndices;
+            }
+        }
+        try (DescriptorReader reader = open(file)) {
+            int[] frameIndices = new int[1024];
+            int count = 0;
+            while (reader.next()) {
+                if (count == frameIndices.length) {
+                    frameIndices = Arrays.copyOf(frameIndices, count * 2);
+                }
+                frameIndices[count++] = reader.frameIndex();
+            }
+            return Arrays.copyOf(frameIndices, count);
+        }
+    }
+
+    // Avança para o próximo descritor; false no fim do arquivo
+    public abstract boolean next() throws IOException;
+
+    // Posição do descritor atual no arquivo (0 para o primeiro)
+    public int position() {
+        return position;
+    }
+
+    /*
+    Índice do quadro do descritor atual no vídeo. Difere da posição quando a decodificação pulou quadros
+    (somente quadros-chave, sem B-frames, taxa reduzida ou quase duplicados descartados); arquivos texto
+    antigos, sem a linha "# quadro=N", usam a posição.
+     */
+    public int frameIndex() {
+        return frameIndex;
+    }
+
+    public boolean isOrb() {
+        return orb;
+    }
+
+    // Valores do descritor atual em values()[0..length()); o vetor é reaproveitado no próximo descritor
+    public float[] values() {
+        return values;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public float[] copyFloats() {
+        return Arrays.copyOf(values, length);
+    }
+
+    // Bytes dos keypoints do descritor ORB atual em bytes()[0..linhas x colunas)
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public int orbRows() {
+        return orbRows;
+    }
+
+    public OrbDescriptors toOrbDescriptors() {
+        return new OrbDescriptors(orbRows, orbCols, orbType, Arrays.copyOf(bytes, orbRows * orbCols));
+    }
+
+    // Mat nativo com uma cópia dos bytes do descritor ORB atual
+    public Mat toMat() {
+        Mat mat = new Mat(orbRows, orbCols, orbType);
+        if (orbRows * orbCols > 0) {
+            mat.data().put(bytes, 0, orbRows * orbCols);
+        }
+        return mat;
+    }
+
+    /*
+    Os descritores restantes como Stream, cada um convertido por mapper (que deve copiar o que guardar).
+    Erros de leitura chegam como UncheckedIOException.
+     */
+    public <T> Stream<T> stream(Function<DescriptorReader, T> mapper) {
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!next()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                action.accept(mapper.apply(DescriptorReader.this));
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    protected void ensureValues(int capacity) {
+        if (values.length < capacity) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+
+    protected void ensureBytes(int capacity) {
+        if (bytes.length < capacity) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+
+    // Registros do DescriptorFile, decodificados direto da região mapeada
+    private static final class Binary extends DescriptorReader {
+        private final DescriptorFile.Reader file;
+
+        Binary(DescriptorFile.Reader file) {
+            this.file = file;
+            this.orb = file.getType().isVariable();
+        }
+
+        @Override
+        public boolean next() {
+            if (position + 1 >= file.size()) {
+                return false;
+            }
+            position++;
+            frameIndex = file.frameIndexAt(position);
+            int dimension = file.getDimension();
+            if (orb) {
+                orbRows = file.rowsAt(position);
+                // Quadro sem keypoints: o mesmo Mat vazio que o extrator devolve
+                orbCols = orbRows == 0 ? 0 : dimension;
+                orbType = CV_8U;
+                ensureBytes(orbRows * dimension);
+                file.readOrb(position, bytes);
+            } else {
+                ensureValues(dimension);
+                file.readFloats(position, values);
+                length = dimension;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /*
+    Formato texto: um bloco de linhas por descritor, separado do próximo por uma linha em branco e precedido
+    da linha opcional "# quadro=N" (DescriptorOutput.TEXT_FRAME_PREFIX). HOG: "[v1, v2, ...]"; CNN:
+    "v1,v2,...", depois de um cabeçalho opcional "# modelo=..."; ORB: a linha "linhas: colunas: tipo"
+    seguida dos bytes em hexadecimal separados por espaço.
+     */
+    private static final class Text extends DescriptorReader {
+        private static final int END = -1;
+        private static final double[] POWERS_OF_TEN = new double[23];
+
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+
+        private final Reader input;
+        private final char[] buffer = new char[1 << 16];
+        private int bufferPosition;
+        private int bufferLimit;
+        private char[] token = new char[64];
+        private int tokenLength;
+        // Quebras de linha desde o último token; duas seguidas encerram o bloco
+        private int newlines;
+        private int separator;
+
+        Text(Reader input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            // Pula linhas em branco e comentários (cabeçalho da CNN), guardando o índice do quadro
+            int commentFrameIndex = -1;
+            while (true) {
+                int c = read();
+                if (c == END) {
+                    return false;
+                }
+                if (c == '#') {
+                    commentFrameIndex = readComment(commentFrameIndex);
+                } else if (!Character.isWhitespace(c)) {
+                    bufferPosition--;
+                    break;
+                }
+            }
+            position++;
+            frameIndex = commentFrameIndex >= 0 ? commentFrameIndex : position;
+            newlines = 0;
+            length = 0;
+            boolean anyValue = nextToken();
+            orb = anyValue && separator == ':';
+            if (orb) {
+                readOrb();
+            } else if (anyValue) {
+                do {
+                    ensureValues(length + 1);
+                    values[length++] = parseFloat(token, tokenLength);
+                } while (nextToken());
+            }
+            return true;
+        }
+
+        private void readOrb() throws IOException {
+            orbRows = parseInt();
+            if (!nextToken()) {
+                throw invalidOrb("cabeçalho incompleto");
+            }
+            orbCols = parseInt();
+            if (!nextToken()) {
+                throw invalidOrb("cabeçalho incompleto");
+            }
+            orbType = parseInt();
+            int expected = orbRows * orbCols;
+            ensureBytes(expected);
+            int count = 0;
+            while (nextToken()) {
+                if (count == expected || tokenLength > 2) {
+                    throw invalidOrb("bytes a mais ou inválidos");
+                }
+                int high = tokenLength == 2 ? Character.digit(token[0], 16) : 0;
+                int low = Character.digit(token[tokenLength - 1], 16);
+                if (high < 0 || low < 0) {
+                    throw invalidOrb("byte inválido " + new String(token, 0, tokenLength));
+                }
+                bytes[count++] = (byte) (high << 4 | low);
+            }
+            if (count != expected) {
+                throw invalidOrb(count + " bytes, esperado " + expected);
+            }
+        }
+
+        // Resto de uma linha de comentário; devolve o índice de "# quadro=N" ou o índice já encontrado
+        private int readComment(int currentFrameIndex) throws IOException {
+            String prefix = DescriptorOutput.TEXT_FRAME_PREFIX;
+            int matched = 1;
+            int value = -1;
+            int c = read();
+            while (c != '\n' && c != END) {
+                if (matched < prefix.length()) {
+                    matched = c == prefix.charAt(matched) ? matched + 1 : Integer.MAX_VALUE;
+                } else if (matched == prefix.length() && c >= '0' && c <= '9') {
+                    value = (value < 0 ? 0 : value * 10) + (c - '0');
+                } else if (c != '\r') {
+                    // Comentário que não é só o índice do quadro
+                    matched = Integer.MAX_VALUE;
+                    value = -1;
+                }
+                c = read();
+            }
+            return matched == prefix.length() && value >= 0 ? value : currentFrameIndex;
+        }
+
+        private IOException invalidOrb(String detail) {
+            return new IOException("Descritor ORB " + position + " inválido: " + detail + ".");
+        }
+
+        private int read() throws IOException {
+            if (bufferPosition == bufferLimit) {
+                bufferLimit = input.read(buffer);
+                bufferPosition = 0;
+                if (bufferLimit <= 0) {
+                    bufferLimit = 0;
+                    return END;
+                }
+            }
+            return buffer[bufferPosition++];
+        }
+
+        private static boolean isSeparator(int c) {
+            return c == ',' || c == '[' || c == ']' || c == ':' || Character.isWhitespace(c);
+        }
+
+        // Próximo número do bloco em token[0..tokenLength); false no fim do bloco (linha em branco ou fim do arquivo)
+        private boolean nextToken() throws IOException {
+            int c;
+            while (true) {
+                c = read();
+                if (c == END) {
+                    return false;
+                }
+                if (c == '\n' && ++newlines == 2) {
+                    return false;
+                }
+                if (!isSeparator(c)) {
+                    break;
+                }
+            }
+            newlines = 0;
+            tokenLength = 0;
+            while (c != END && !isSeparator(c)) {
+                if (tokenLength == token.length) {
+                    token = Arrays.copyOf(token, token.length * 2);
+                }
+                token[tokenLength++] = (char) c;
+                c = read();
+            }
+            separator = c;
+            if (c == '\n') {
+                newlines = 1;
+            }
+            return true;
+        }
+
+        private int parseInt() throws IOException {
+            int value = 0;
+            for (int i = 0; i < tokenLength; i++) {
+                int digit = token[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw invalidOrb("número inválido " + new String(token, 0, tokenLength));
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        /*
+        Mesmo resultado de Float.parseFloat, sem criar a String. Até 18 dígitos significativos vão para um long e
+        a escala é aplicada em double com potências de 10 exatas; o erro dessa conta fica muito abaixo da
+        precisão do float, então o arredondamento para float só pode divergir quando o valor cai quase em cima
+        do ponto médio entre dois floats. Esses casos, NaN, Infinity e expoentes fora da tabela usam
+        Float.parseFloat.
+         */
+        static float parseFloat(char[] chars, int length) {
+            int i = 0;
+            boolean negative = false;
+            if (i < length && (chars[i] == '-' || chars[i] == '+')) {
+                negative = chars[i] == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            boolean anyDigit = false;
+            for (; i < length && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                anyDigit = true;
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (chars[i] - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                } else {
+                    exponent++;
+                }
+            }
+            if (i < length && chars[i] == '.') {
+                for (i++; i < length && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                    anyDigit = true;
+                    if (significantDigits < 18) {
+                        mantissa = mantissa * 10 + (chars[i] - '0');
+                        if (mantissa != 0) {
+                            significantDigits++;
+                        }
+                        exponent--;
+                    }
+                }
+            }
+            if (anyDigit && i < length && (chars[i] == 'E' || chars[i] == 'e')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < length && (chars[i] == '-' || chars[i] == '+')) {
+                    negativeExponent = chars[i] == '-';
+                    i++;
+                }
+                int explicitExponent = 0;
+                boolean anyExponentDigit = false;
+                for (; i < length && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                    anyExponentDigit = true;
+                    explicitExponent = Math.min(explicitExponent * 10 + (chars[i] - '0'), 10000);
+                }
+                if (!anyExponentDigit) {
+                    anyDigit = false;
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+            if (!anyDigit || i != length) {
+                return Float.parseFloat(new String(chars, 0, length));
+            }
+            if (mantissa == 0) {
+                return negative ? -0.0f : 0.0f;
+            }
+            double value = mantissa;
+            if (exponent >= 0 && exponent < 2 * POWERS_OF_TEN.length - 1) {
+                value = scaleUp(value, exponent);
+            } else if (exponent < 0 && -exponent < 2 * POWERS_OF_TEN.length - 1) {
+                value = scaleDown(value, -exponent);
+            } else {
+                return Float.parseFloat(new String(chars, 0, length));
+            }
+            float result = (float) value;
+            if (nearFloatMidpoint(value, result)) {
+                return Float.parseFloat(new String(chars, 0, length));
+            }
+            return negative ? -result : result;
+        }
+
+        private static double scaleUp(double value, int exponent) {
+            if (exponent >= POWERS_OF_TEN.length) {
+                value *= POWERS_OF_TEN[POWERS_OF_TEN.length - 1];
+                exponent -= POWERS_OF_TEN.length - 1;
+            }
+            return value * POWERS_OF_TEN[exponent];
+        }
+
+        private static double scaleDown(double value, int exponent) {
+            if (exponent >= POWERS_OF_TEN.length) {
+                value /= POWERS_OF_TEN[POWERS_OF_TEN.length - 1];
+                exponent -= POWERS_OF_TEN.length - 1;
+            }
+            return value / POWERS_OF_TEN[exponent];
+        }
+
+        // Valor a menos de 2^-20 ulp do ponto médio com o float vizinho (acima ou abaixo), ou fora da faixa normal
+        private static boolean nearFloatMidpoint(double value, float rounded) {
+            if (Float.isInfinite(rounded) || rounded < Float.MIN_NORMAL) {
+                return true;
+            }
+            double error = Math.abs(value - rounded);
+            double halfUlp = Math.ulp(rounded) / 2.0;
+            double tolerance = halfUlp * 0x1p-20;
+            // Numa potência de 2 o float anterior fica a meio ulp de distância
+            return Math.abs(error - halfUlp) <= tolerance || Math.abs(error - halfUlp / 2) <= tolerance;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
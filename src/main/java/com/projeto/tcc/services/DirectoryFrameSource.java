@@ -0,0 +1,41 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Diretórios de quadros gravados antes do manifesto: um arquivo por quadro, na ordem alfabética
+public class DirectoryFrameSource implements FrameSource {
+
+    private final File[] files;
+
+    public DirectoryFrameSource(File framesDir) throws IOException {
+        File[] listed = framesDir.listFiles(File::isFile);
+        if (listed == null) {
+            throw new IOException("Não foi possível listar os arquivos no diretório especificado.");
+        }
+        Arrays.sort(listed);
+        this.files = listed;
+    }
+
+    @Override
+    public int size() {
+        return files.length;
+    }
+
+    @Override
+    public int frameIndexAt(int position) {
+        return position;
+    }
+
+    @Override
+    public Mat readFrameAt(int position) throws IOException {
+        return FrameEncoderPool.readFrame(files[position]);
+    }
+
+    @Override
+    public void close() {
+    }
+}
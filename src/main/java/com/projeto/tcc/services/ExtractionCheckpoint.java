@@ -0,0 +1,148 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/*
+Arquivo de descritores com ponto de retomada. A cada commit a saída é descarregada, o arquivo é
+sincronizado com o disco (fsync) e o checkpoint é regravado de forma atômica com a quantidade de
+quadros concluídos e o tamanho do arquivo de descritores nesse ponto. Ao retomar, o arquivo de
+descritores é truncado nesse tamanho, descartando o que foi escrito depois do último commit.
+ */
+@Slf4j
+public class ExtractionCheckpoint implements Closeable {
+
+    public static final String FILE_NAME = "progresso.checkpoint";
+
+    // Cria a saída de descritores (texto ou binária) sobre o arquivo já truncado e posicionado no fim
+    public interface OutputFactory {
+        DescriptorOutput open(File descriptorFile, OutputStream stream, boolean newFile) throws IOException;
+    }
+
+    private final File checkpointFile;
+    private final String source;
+    private final String extractorName;
+    private final int totalFrames;
+    private final FileOutputStream fileOutput;
+    private final DescriptorOutput output;
+    private int committedFrames;
+
+    private ExtractionCheckpoint(File descriptorsDir, File descriptorFile, String source, String extractorName,
+                                 int totalFrames, int committedFrames, long committedBytes, OutputFactory outputFactory) throws IOException {
+        this.checkpointFile = new File(descriptorsDir, FILE_NAME);
+        this.source = source;
+        this.extractorName = extractorName;
+        this.totalFrames = totalFrames;
+        this.committedFrames = committedFrames;
+        try (FileChannel channel = FileChannel.open(descriptorFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(committedBytes);
+        }
+        this.fileOutput = new FileOutputStream(descriptorFile, true);
+        this.output = outputFactory.open(descriptorFile, fileOutput, committedBytes == 0);
+    }
+
+    // Extração nova: o arquivo de descritores começa vazio
+    public static ExtractionCheckpoint start(File descriptorsDir, File descriptorFile, String source,
+                                             String extractorName, int totalFrames, OutputFactory outputFactory) throws IOException {
+        return new ExtractionCheckpoint(descriptorsDir, descriptorFile, source, extractorName, totalFrames, 0, 0, outputFactory);
+    }
+
+    /*
+    Procura, entre os diretórios de descritores do vídeo, uma extração interrompida das mesmas
+    imagens com o mesmo extrator. Retorna null se não houver nenhuma para retomar.
+     */
+    public static ExtractionCheckpoint resume(File baseDir, String dirPrefix, String descriptorFileName, String source,
+                                              String extractorName, int totalFrames, OutputFactory outputFactory) throws IOException {
+        for (int dirIndex = 1; ; dirIndex++) {
+            File descriptorsDir = new File(baseDir, dirPrefix + dirIndex);
+            if (!descriptorsDir.exists()) {
+                return null;
+            }
+            File checkpointFile = new File(descriptorsDir, FILE_NAME);
+            File descriptorFile = new File(descriptorsDir, descriptorFileName);
+            if (!checkpointFile.isFile() || !descriptorFile.isFile()) {
+                continue;
+            }
+            Properties properties = new Properties();
+            try (InputStream input = new FileInputStream(checkpointFile)) {
+                properties.load(input);
+            }
+            boolean sameExtraction = source.equals(properties.getProperty("origem"))
+                    && extractorName.equals(properties.getProperty("extrator"))
+                    && String.valueOf(totalFrames).equals(properties.getProperty("total"));
+            if (!sameExtraction || Boolean.parseBoolean(properties.getProperty("concluido"))) {
+                continue;
+            }
+            int committedFrames = Integer.parseInt(properties.getProperty("quadros"));
+            long committedBytes = Long.parseLong(properties.getProperty("bytes"));
+            if (descriptorFile.length() < committedBytes) {
+                log.warn("Arquivo de descritores menor que o checkpoint, ignorando {}", descriptorsDir);
+                continue;
+            }
+            log.info("Retomando a extração {} a partir do quadro {} de {}", descriptorsDir.getName(), committedFrames, totalFrames);
+            return new ExtractionCheckpoint(descriptorsDir, descriptorFile, source, extractorName, totalFrames,
+                    committedFrames, committedBytes, outputFactory);
+        }
+    }
+
+    public DescriptorOutput getOutput() {
+        return output;
+    }
+
+    // Quadros cujos descritores já estão gravados; a extração continua a partir desta posição
+    public int getCommittedFrames() {
+        return committedFrames;
+    }
+
+    // Confirma os descritores escritos até aqui como os dos primeiros committedFrames quadros
+    public void commit(int committedFrames) throws IOException {
+        sync(committedFrames, false);
+    }
+
+    // Marca a extração como concluída; o diretório deixa de ser candidato a retomada
+    public void complete() throws IOException {
+        sync(totalFrames, true);
+    }
+
+    private void sync(int committedFrames, boolean completed) throws IOException {
+        output.flush();
+        fileOutput.getFD().sync();
+        this.committedFrames = committedFrames;
+        writeCheckpoint(completed);
+    }
+
+    private void writeCheckpoint(boolean completed) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("origem", source);
+        properties.setProperty("extrator", extractorName);
+        properties.setProperty("total", String.valueOf(totalFrames));
+        properties.setProperty("quadros", String.valueOf(committedFrames));
+        properties.setProperty("bytes", String.valueOf(fileOutput.getChannel().size()));
+        properties.setProperty("concluido", String.valueOf(completed));
+
+        // Grava ao lado e renomeia, para que uma queda no meio nunca deixe um checkpoint pela metade
+        File tmp = new File(checkpointFile.getParentFile(), FILE_NAME + ".tmp");
+        try (FileOutputStream tmpOutput = new FileOutputStream(tmp)) {
+            properties.store(tmpOutput, null);
+            tmpOutput.getFD().sync();
+        }
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,23 @@
+package com.projeto.tcc.services;
+
+// Formatos disponíveis para gravar os quadros em disco
+public enum FrameCodec {
+    // Dump dos bytes BGR com cabeçalho (linhas, colunas, tipo); sem compressão
+    RAW_BGR("bgr"),
+    // PNG via Java2D com nível de compressão configurável (0-9)
+    PNG("png"),
+    // JPEG via Java2D com qualidade configurável (0-100)
+    JPEG("jpg"),
+    // imwrite do OpenCV, sempre em PNG, com o mesmo nível de compressão do codec PNG
+    OPENCV("png");
+
+    private final String extension;
+
+    FrameCodec(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,224 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
+
+/*
+Gravação assíncrona dos quadros. O decodificador entrega o Mat e segue decodificando enquanto
+um grupo limitado de threads codifica os quadros no formato configurado e os grava no FrameStore.
+ */
+@Service
+@Slf4j
+public class FrameEncoderPool {
+
+    @Value("${tcc.frames.codec:PNG}")
+    private FrameCodec codec;
+
+    @Value("${tcc.frames.png-compressao:1}")
+    private int pngCompression;
+
+    @Value("${tcc.frames.jpeg-qualidade:90}")
+    private int jpegQuality;
+
+    @Value("${tcc.frames.escritores:4}")
+    private int writers;
+
+    @Value("${tcc.frames.capacidade-fila:64}")
+    private int queueCapacity;
+
+    private static final ThreadLocal<OpenCVFrameConverter.ToMat> MAT_CONVERTER = ThreadLocal.withInitial(OpenCVFrameConverter.ToMat::new);
+    private static final ThreadLocal<Java2DFrameConverter> JAVA2D_CONVERTER = ThreadLocal.withInitial(Java2DFrameConverter::new);
+
+    public FrameCodec getCodec() {
+        return codec;
+    }
+
+    // Cria o store de quadros no diretório e abre uma sessão de gravação para ele
+    public Session open(File framesDir, double frameRate) throws IOException {
+        return new Session(FrameStore.create(framesDir, codec, frameRate));
+    }
+
+    // Leitura de um quadro gravado em arquivo isolado (diretórios anteriores ao store, com cabeçalho RAW big-endian)
+    public static Mat readFrame(File file) throws IOException {
+        if (!file.getName().endsWith("." + FrameCodec.RAW_BGR.getExtension())) {
+            return imread(file.getAbsolutePath());
+        }
+        return FrameStore.decode(Files.readAllBytes(file.toPath()), FrameCodec.RAW_BGR, ByteOrder.BIG_ENDIAN);
+    }
+
+    public class Session implements Closeable {
+
+        private final FrameStore.Writer store;
+        private final ExecutorService executor;
+        private final Semaphore slots;
+        private final AtomicLong framesWritten = new AtomicLong();
+        private final AtomicLong encodeNanos = new AtomicLong();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final long startTime = System.nanoTime();
+
+        private Session(FrameStore.Writer store) {
+            this.store = store;
+            this.executor = Executors.newFixedThreadPool(Math.max(1, writers));
+            this.slots = new Semaphore(Math.max(1, queueCapacity));
+        }
+
+        // Copia o Mat e agenda a gravação; bloqueia quando a fila de gravação está cheia. Pode ser chamado por várias threads.
+        public void submit(int frameIndex, long timestamp, boolean keyFrame, Mat mat) throws IOException, InterruptedException {
+            rethrowFailure();
+            slots.acquire();
+            Mat copy = mat.clone();
+            try {
+                executor.execute(() -> {
+                    try {
+                        long start = System.nanoTime();
+                        byte[] encoded = encode(copy);
+                        encodeNanos.addAndGet(System.nanoTime() - start);
+                        store.append(frameIndex, timestamp, keyFrame, copy.cols(), copy.rows(), encoded);
+                        framesWritten.incrementAndGet();
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        copy.release();
+                        slots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                copy.release();
+                slots.release();
+                throw new IOException("O grupo de gravação de quadros já foi encerrado.", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+                    throw new IOException("Tempo esgotado aguardando a gravação dos quadros.");
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Gravação dos quadros interrompida.", e);
+            } finally {
+                store.close();
+            }
+            long frames = framesWritten.get();
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            double encodeMillis = frames == 0 ? 0 : encodeNanos.get() / 1e6 / frames;
+            log.info("Codec {} ({}): {} quadros em {} s -> {} quadros/s ({} threads, codificação média {} ms/quadro)",
+                    codec, codecSettings(), frames, String.format("%.2f", seconds), String.format("%.1f", frames / Math.max(seconds, 1e-9)),
+                    writers, String.format("%.2f", encodeMillis));
+            rethrowFailure();
+        }
+
+        private void rethrowFailure() throws IOException {
+            Exception e = failure.get();
+            if (e != null) {
+                throw new IOException("Falha ao gravar quadro.", e);
+            }
+        }
+    }
+
+    private String codecSettings() {
+        switch (codec) {
+            case PNG:
+            case OPENCV:
+                return "compressão " + pngCompression;
+            case JPEG:
+                return "qualidade " + jpegQuality;
+            default:
+                return "sem compressão";
+        }
+    }
+
+    private byte[] encode(Mat mat) throws IOException {
+        switch (codec) {
+            case RAW_BGR:
+                return encodeRaw(mat);
+            case PNG:
+                // Qualidade 1.0 corresponde a nenhuma compressão no escritor PNG do JDK
+                return encodeJava2D(mat, "png", 1f - pngCompression / 9f);
+            case JPEG:
+                return encodeJava2D(mat, "jpeg", jpegQuality / 100f);
+            case OPENCV:
+            default:
+                BytePointer buffer = new BytePointer();
+                IntPointer params = new IntPointer(IMWRITE_PNG_COMPRESSION, pngCompression);
+                try {
+                    if (!imencode("." + codec.getExtension(), mat, buffer, params)) {
+                        throw new IOException("imencode falhou.");
+                    }
+                    byte[] encoded = new byte[(int) buffer.limit()];
+                    buffer.get(encoded);
+                    return encoded;
+                } finally {
+                    buffer.deallocate();
+                    params.deallocate();
+                }
+        }
+    }
+
+    // Cabeçalho (linhas, colunas, tipo) seguido dos bytes do Mat
+    private byte[] encodeRaw(Mat mat) {
+        Mat continuous = mat.isContinuous() ? mat : mat.clone();
+        try {
+            int size = (int) (continuous.total() * continuous.elemSize());
+            ByteBuffer buffer = ByteBuffer.allocate(12 + size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(continuous.rows());
+            buffer.putInt(continuous.cols());
+            buffer.putInt(continuous.type());
+            new BytePointer(continuous.data()).get(buffer.array(), 12, size);
+            return buffer.array();
+        } finally {
+            if (continuous != mat) {
+                continuous.release();
+            }
+        }
+    }
+
+    private byte[] encodeJava2D(Mat mat, String format, float quality) throws IOException {
+        BufferedImage image = JAVA2D_CONVERTER.get().convert(MAT_CONVERTER.get().convert(mat));
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Cache em memória: o padrão do ImageIO usa arquivos temporários
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionTypes() != null && param.getCompressionType() == null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(Math.max(0f, Math.min(1f, quality)));
+            }
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+}
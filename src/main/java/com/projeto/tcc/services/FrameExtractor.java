@@ -1,34 +1,18 @@
 package com.projeto.tcc.services;
 
-
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.Frame;
-import org.bytedeco.javacv.Java2DFrameUtils;
-import org.bytedeco.opencv.opencv_core.DMatchVector;
-import org.bytedeco.opencv.opencv_core.KeyPointVector;
+import org.bytedeco.javacv.OpenCVFrameConverter;
 import org.bytedeco.opencv.opencv_core.Mat;
-import org.bytedeco.opencv.opencv_core.Size;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import static org.bytedeco.opencv.global.opencv_imgproc.*;
-
 import org.springframework.beans.factory.annotation.Autowired;
-import org.bytedeco.opencv.opencv_core.KeyPoint;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.io.*;
-import java.util.*;
 import java.util.concurrent.*;
 
 @Service
@@ -44,9 +28,54 @@ public class FrameExtractor {
     @Autowired
     private CNNExtractor cnnExtractor;
 
+    @Autowired
+    private SegmentedVideoDecoder segmentedVideoDecoder;
+
+    @Autowired
+    private FrameEncoderPool frameEncoderPool;
+
+    @Autowired
+    private FrameFilterSettings frameFilterSettings;
+
+    @Autowired
+    private DescriptorCache descriptorCache;
+
     private static final int BATCH_SIZE = 30;
+    private static final String DESCRIPTORS_BASE_PATH = "D:\\UFU\\tcc_video_frames\\descriptores";
+
+    @Value("${tcc.streaming.capacidade-fila:64}")
+    private int streamingQueueCapacity;
+
+    @Value("${tcc.descritores.formato:binario}")
+    private String descriptorFormat;
+
+    @Value("${tcc.descritores.precisao-cnn:float32}")
+    private String cnnPrecision;
+
+    @Value("${tcc.cenas.ativo:false}")
+    private boolean shotDetection;
+
+    @Value("${tcc.cenas.limiar-corte:30}")
+    private double shotCutThreshold;
+
+    @Value("${tcc.cenas.descartar-duplicados:false}")
+    private boolean dropDuplicateFrames;
+
+    @Value("${tcc.cenas.limiar-duplicado:2}")
+    private double duplicateThreshold;
 
     public void samplingFrames(String videoPath) throws IOException, FFmpegFrameGrabber.Exception {
+        samplingFrames(videoPath, 1, DecodeMode.FULL);
+    }
+
+    /*
+    Com mais de um segmento, os intervalos do vídeo são decodificados em paralelo (ver SegmentedVideoDecoder).
+    Nos modos que descartam quadros (e nos segmentos), o índice de cada quadro vem do seu timestamp, então o
+    manifesto fica esparso mas cada quadro mantém o índice e o PTS que teria na decodificação completa; na
+    decodificação completa em um segmento o índice é a contagem dos quadros. Um índice repetido (vídeo de
+    taxa variável) faz o store falhar em vez de sobrescrever o quadro.
+     */
+    public void samplingFrames(String videoPath, int segments, DecodeMode mode) throws IOException, FFmpegFrameGrabber.Exception {
         long startTime = System.currentTimeMillis();
 
         String videoName = new File(videoPath).getName();
@@ -57,87 +86,229 @@ public class FrameExtractor {
             throw new IOException("Não foi possível criar o diretório para armazenar os frames.");
         }
 
-        FFmpegFrameGrabber frameGrabber = new FFmpegFrameGrabber(videoPath);
-        frameGrabber.start();
-        try {
-            for (int i = 0; i < frameGrabber.getLengthInFrames(); i++) {
-                Frame frame = frameGrabber.grabImage();
-                if (frame == null) {
-                    break;
-                }
-                BufferedImage image = Java2DFrameUtils.toBufferedImage(frame);
-                ImageIO.write(image, "png", new File(framesPath + "/video-frame-" + System.currentTimeMillis() + ".png"));
+        VideoTiming timing = segmentedVideoDecoder.probeTiming(videoPath);
+        if (timing == null) {
+            log.warn("O vídeo não possui quadros: {}", videoPath);
+            return;
+        }
+
+        if (segments > 1) {
+            try (FrameEncoderPool.Session frameWriter = frameEncoderPool.open(framesDir, timing.getFrameRate())) {
+                int frames = segmentedVideoDecoder.decode(videoPath, segments, mode, decodedFrame -> frameWriter.submit(
+                        decodedFrame.getFrameIndex(), decodedFrame.getTimestamp(), decodedFrame.isKeyFrame(), decodedFrame.getMat()));
+                log.info("Todos os frames foram decodificados ({} quadros, {} segmentos, modo {})", frames, segments, mode);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Decodificação segmentada interrompida.", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Falha na decodificação segmentada.", e.getCause());
             }
             log.info("Todos os frames foram armazenados");
-            frameGrabber.stop();
             long endTime = System.currentTimeMillis();
             log.info("Tempo de execução da separação dos frames: " + (endTime - startTime) + " ms");
+            return;
+        }
+
+        FFmpegFrameGrabber frameGrabber = new FFmpegFrameGrabber(videoPath);
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        mode.apply(frameGrabber);
+        frameGrabber.start();
+        try (FrameEncoderPool.Session frameWriter = frameEncoderPool.open(framesDir, timing.getFrameRate())) {
+            int frames = 0;
+            Frame frame;
+            while ((frame = frameGrabber.grabImage()) != null) {
+                frameWriter.submit(timing.sequentialFrameIndex(mode, frames, frame.timestamp), frame.timestamp, frame.keyFrame, converter.convert(frame));
+                frames++;
+            }
+            frameGrabber.stop();
+            log.info("Todos os frames foram decodificados ({} de {} quadros, modo {})", frames, timing.getLengthInFrames(), mode);
         } catch (IOException e) {
             log.error("Falha no processo de obtenção dos frames.");
             e.printStackTrace();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Separação dos frames interrompida.", e);
         }
+        log.info("Todos os frames foram armazenados");
+        long endTime = System.currentTimeMillis();
+        log.info("Tempo de execução da separação dos frames: " + (endTime - startTime) + " ms");
     }
 
-    public static String matToString(Mat mat) {
-        StringBuilder sb = new StringBuilder();
-        // Concatenar número de linhas, colunas e tipo de dados
-        sb.append(mat.rows()).append(": ").append(mat.cols()).append(": ").append(mat.type()).append("\n");
-        // Concatenar dados do Mat
-        ByteBuffer buffer = mat.createBuffer();
-        while (buffer.hasRemaining()) {
-            byte b = buffer.get();
-            sb.append(String.format("%02X", b & 0xFF)).append(" ");
+    /*
+    Extração em fluxo: os quadros saem do FFmpegFrameGrabber direto para os extratores como Mat,
+    sem o ciclo de escrita e leitura de PNG. Uma thread decodifica e alimenta uma fila limitada;
+    a thread chamadora monta os lotes, que são pré-processados e extraídos em paralelo e gravados
+    na ordem dos quadros pelo estágio de gravação. Gravar os quadros em disco é opcional.
+     */
+    public void extractFeaturesFromVideo(String videoPath, boolean saveFrames, DecodeMode mode) throws IOException, InterruptedException, ExecutionException {
+        String extractorName = chooseExtractor();
+        if (extractorName == null) {
+            return;
         }
-        sb.append("\n");
-        return sb.toString();
-    }
 
-    public static String indArrayToString(INDArray array) {
-        // Convertendo o INDArray para uma string no formato CSV
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < array.rows(); i++) {
-            for (int j = 0; j < array.columns(); j++) {
-                sb.append(array.getDouble(i, j));
-                if (j < array.columns() - 1) {
-                    sb.append(",");
+        String videoName = new File(videoPath).getName();
+        File framesDir = null;
+        if (saveFrames) {
+            framesDir = new File("D:\\UFU\\tcc_video_frames\\frames\\" + videoName);
+            if (!framesDir.exists() && !framesDir.mkdirs()) {
+                throw new IOException("Não foi possível criar o diretório para armazenar os frames.");
+            }
+        }
+        File descriptorsDir = createDescriptorsDir(videoName, extractorName);
+
+        long startTime = System.currentTimeMillis();
+        BlockingQueue<DecodedFrame> queue = new ArrayBlockingQueue<>(streamingQueueCapacity);
+        ExecutorService decoder = Executors.newSingleThreadExecutor();
+        final File framesDirToSave = framesDir;
+        Future<Void> decoding = decoder.submit(() -> {
+            decodeToQueue(videoPath, mode, extractorName, queue, framesDirToSave, descriptorsDir);
+            return null;
+        });
+
+        int processedFrames = 0;
+        // Cada lote em andamento guarda seus quadros decodificados; a CNN já usa todos os núcleos na inferência
+        int threads = extractorName.equals("CNN") ? 1 : Runtime.getRuntime().availableProcessors();
+        ExecutorService extractors = Executors.newFixedThreadPool(threads);
+        try (DescriptorOutput output = openDescriptorOutput(descriptorsDir, extractorName);
+             OrderedDescriptorWriter writer = new OrderedDescriptorWriter(output, 0, threads + 1, writtenFrames -> { })) {
+            List<DecodedFrame> batch = new ArrayList<>(BATCH_SIZE);
+            while (true) {
+                DecodedFrame decodedFrame = queue.take();
+                if (decodedFrame.isEnd()) {
+                    break;
+                }
+                batch.add(decodedFrame);
+                if (batch.size() == BATCH_SIZE) {
+                    processedFrames += submitStreamingBatch(writer, extractors, batch, extractorName);
+                    batch = new ArrayList<>(BATCH_SIZE);
                 }
             }
-            sb.append("\n");
+            processedFrames += submitStreamingBatch(writer, extractors, batch, extractorName);
+            writer.finish();
+            // Propaga falhas da thread de decodificação
+            decoding.get();
+        } finally {
+            decoding.cancel(true);
+            decoder.shutdownNow();
+            extractors.shutdownNow();
         }
-        return sb.toString();
-    }
 
-    private Mat resizeFrame(Mat frame, Size size) {
-        Mat resizedFrame = new Mat();
-        resize(frame, resizedFrame, size);
-        return resizedFrame;
+        long endTime = System.currentTimeMillis();
+        log.info("Extração em fluxo concluída: {} quadros em {} ms", processedFrames, endTime - startTime);
+        descriptorCache.logStatistics();
     }
 
-    private Mat applyGaussianBlur(Mat frame, Size ksize, double sigmaX) {
-        Mat blurredFrame = new Mat();
-        GaussianBlur(frame, blurredFrame, ksize, sigmaX);
-        return blurredFrame;
+    private void decodeToQueue(String videoPath, DecodeMode mode, String extractorName, BlockingQueue<DecodedFrame> queue, File framesDir, File descriptorsDir) throws Exception {
+        VideoTiming timing = segmentedVideoDecoder.probeTiming(videoPath);
+        if (timing == null) {
+            queue.put(DecodedFrame.END);
+            return;
+        }
+        FFmpegFrameGrabber frameGrabber = new FFmpegFrameGrabber(videoPath);
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        mode.apply(frameGrabber);
+        frameGrabber.start();
+        FrameEncoderPool.Session frameWriter = framesDir != null ? frameEncoderPool.open(framesDir, timing.getFrameRate()) : null;
+        FrameFilterStage filterStage = frameFilterSettings.open(extractorName, frameGrabber);
+        ShotDetector shotDetector = shotDetection ? new ShotDetector(shotCutThreshold, dropDuplicateFrames, duplicateThreshold) : null;
+        try {
+            int[] frames = {0};
+            // O grabber reutiliza o buffer do quadro, por isso o Mat é copiado antes de entrar na fila
+            SegmentedVideoDecoder.FrameConsumer enqueue = filtered -> {
+                if (shotDetector != null && !shotDetector.accept(filtered)) {
+                    return;
+                }
+                queue.put(new DecodedFrame(filtered.getFrameIndex(), filtered.getTimestamp(), filtered.isKeyFrame(), filtered.getMat().clone()));
+                frames[0]++;
+            };
+            int decodedFrames = 0;
+            Frame frame;
+            while ((frame = frameGrabber.grabImage()) != null) {
+                int frameIndex = timing.sequentialFrameIndex(mode, decodedFrames++, frame.timestamp);
+                // Os quadros gravados em disco mantêm a resolução original
+                if (frameWriter != null) {
+                    frameWriter.submit(frameIndex, frame.timestamp, frame.keyFrame, converter.convert(frame));
+                }
+                filterStage.process(frame, frameIndex, enqueue);
+            }
+            filterStage.finish(enqueue);
+            log.info("Decodificação concluída: {} quadros entregues aos extratores (modo {})", frames[0], mode);
+            if (shotDetector != null) {
+                FrameIndexFile.write(descriptorsDir, shotDetector.getKeptFrames());
+                log.info("Cenas detectadas: {}, quadros quase duplicados descartados: {}", shotDetector.getShotCount(), shotDetector.getDroppedFrames());
+            }
+        } finally {
+            try {
+                if (shotDetector != null) {
+                    shotDetector.close();
+                }
+                filterStage.close();
+                if (frameWriter != null) {
+                    frameWriter.close();
+                }
+            } finally {
+                frameGrabber.stop();
+                frameGrabber.release();
+                queue.put(DecodedFrame.END);
+            }
+        }
     }
 
-    private Mat preprocessFrame(Mat frame) {
-        // Redimensiona o frame
-        Size newSize = new Size(224, 224); // Exemplo de novo tamanho
-        frame = resizeFrame(frame, newSize);
-
-        // Aplica o filtro Gaussiano
-        frame = applyGaussianBlur(frame, new Size(9, 9), 1.5);
-        return frame;
+    private int submitStreamingBatch(OrderedDescriptorWriter writer, ExecutorService extractors, List<DecodedFrame> batch,
+                                     String extractorName) throws IOException, InterruptedException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        writer.submit(extractors, batch.size(), () -> extractStreamingBatch(batch, extractorName));
+        return batch.size();
     }
 
-
-    public void extractFeatures(String framesPath, String videoName) throws IOException {
-        File dir = new File(framesPath);
-        File[] files = dir.listFiles();
-        if (files == null) {
-            throw new IOException("Não foi possível listar os arquivos no diretório especificado.");
+    private OrderedDescriptorWriter.Batch extractStreamingBatch(List<DecodedFrame> batch, String extractorName) throws IOException {
+        List<Mat> decodedMats = new ArrayList<>(batch.size());
+        int[] frameIndexes = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            decodedMats.add(batch.get(i).getMat());
+            frameIndexes[i] = batch.get(i).getFrameIndex();
+        }
+        try {
+            // A CNN recebe o quadro original, como na leitura dos PNGs
+            List<Mat> frames = extractorName.equals("CNN") ? decodedMats : FramePreprocessor.preprocessBatch(decodedMats);
+            switch (extractorName) {
+                case "HOG":
+                    // Um vetor por lote; os registros são gravados direto dos trechos de cada quadro
+                    int hogSize = hogExtractor.getDescriptorSize();
+                    float[] hogSlab = new float[frames.size() * hogSize];
+                    hogExtractor.hogExtractBatch(frames, hogSlab, 0);
+                    return output -> {
+                        for (int i = 0; i < frameIndexes.length; i++) {
+                            output.writeFloats(frameIndexes[i], hogSlab, i * hogSize);
+                        }
+                    };
+                case "ORB":
+                    List<OrbDescriptors> orbDescriptorsList = orbExtractor.orbExtractBatch(frames);
+                    return output -> {
+                        for (int i = 0; i < orbDescriptorsList.size(); i++) {
+                            output.writeOrb(frameIndexes[i], orbDescriptorsList.get(i));
+                        }
+                    };
+                default:
+                    List<INDArray> cnnFeaturesList = cnnExtractor.cnnFeaturesExtractorBatchFromMats(frames);
+                    return output -> {
+                        for (int i = 0; i < cnnFeaturesList.size(); i++) {
+                            output.writeFeatures(frameIndexes[i], cnnFeaturesList.get(i));
+                        }
+                    };
+            }
+        } finally {
+            // Os quadros pré-processados pertencem ao FramePreprocessor; só os decodificados são liberados
+            for (Mat decodedMat : decodedMats) {
+                decodedMat.release();
+            }
         }
-        Arrays.sort(files);
+    }
 
+    private String chooseExtractor() {
         Scanner scanner = new Scanner(System.in);
         System.out.println("Escolha o extrator de características:");
         System.out.println("1 - HOG");
@@ -147,25 +318,60 @@ public class FrameExtractor {
         System.out.print("Opção: ");
         int option = scanner.nextInt();
 
-        String extractorName = "";
         switch (option) {
             case 1:
-                extractorName = "HOG";
-                break;
+                return "HOG";
             case 2:
-                extractorName = "ORB";
-                break;
+                return "ORB";
             case 3:
-                extractorName = "CNN";
-                break;
+                return "CNN";
             case 4:
-                return;
+                return null;
             default:
                 System.out.println("Opção inválida.");
-                return;
+                return null;
         }
+    }
+
+    // Aceita mais de um extrator separados por vírgula (ex.: 1,3), para extrair todos na mesma leitura dos quadros
+    private List<String> chooseExtractors() {
+        Scanner scanner = new Scanner(System.in);
+        System.out.println("Escolha os extratores de características (um ou mais, separados por vírgula):");
+        System.out.println("1 - HOG");
+        System.out.println("2 - ORB");
+        System.out.println("3 - CNN");
+        System.out.println("4 - Voltar");
+        System.out.print("Opção: ");
+        String options = scanner.next();
+
+        List<String> extractorNames = new ArrayList<>();
+        for (String option : options.split(",")) {
+            String extractorName;
+            switch (option.trim()) {
+                case "1":
+                    extractorName = "HOG";
+                    break;
+                case "2":
+                    extractorName = "ORB";
+                    break;
+                case "3":
+                    extractorName = "CNN";
+                    break;
+                case "4":
+                    return Collections.emptyList();
+                default:
+                    System.out.println("Opção inválida.");
+                    return Collections.emptyList();
+            }
+            if (!extractorNames.contains(extractorName)) {
+                extractorNames.add(extractorName);
+            }
+        }
+        return extractorNames;
+    }
 
-        File baseDir = new File("D:\\UFU\\tcc_video_frames\\descriptores");
+    private File createDescriptorsDir(String videoName, String extractorName) throws IOException {
+        File baseDir = new File(DESCRIPTORS_BASE_PATH);
         int dirIndex = 1;
         File descriptorsDir;
         do {
@@ -176,155 +382,404 @@ public class FrameExtractor {
         if (!descriptorsDir.mkdirs()) {
             throw new IOException("Não foi possível criar o diretório para os descritores.");
         }
+        return descriptorsDir;
+    }
+
+    private DescriptorOutput openDescriptorOutput(File descriptorsDir, String extractorName) throws IOException {
+        return DescriptorOutput.create(descriptorsDir, extractorName, isBinaryOutput(),
+                descriptorType(extractorName), descriptorDimension(extractorName), descriptorHeader(extractorName));
+    }
+
+    // Com tcc.descritores.formato=binario os descritores são gravados no formato binário; texto fica como exportação
+    private boolean isBinaryOutput() {
+        return descriptorFormat.equalsIgnoreCase("binario");
+    }
+
+    // Precisão da CNN escolhida em tcc.descritores.precisao-cnn (float32, float16 ou int8)
+    private DescriptorFile.ValueType descriptorType(String extractorName) {
+        switch (extractorName) {
+            case "ORB":
+                return DescriptorFile.ValueType.UINT8;
+            case "CNN":
+                return DescriptorFile.ValueType.valueOf(cnnPrecision.toUpperCase());
+            default:
+                return DescriptorFile.ValueType.FLOAT32;
+        }
+    }
+
+    // Valores por descritor do HOG, ou bytes por keypoint do ORB; a da CNN vem do primeiro descritor
+    private int descriptorDimension(String extractorName) {
+        switch (extractorName) {
+            case "HOG":
+                return hogExtractor.getDescriptorSize();
+            case "ORB":
+                return ORBExtractor.DESCRIPTOR_BYTES;
+            default:
+                return 0;
+        }
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(descriptorsDir, "descritores" + extractorName + ".txt")))) {
-            List<Mat> frames = new ArrayList<>();
-            List<String> imagePaths = new ArrayList<>();
-            for (File file : files) {
-                if (option == 3) {
-                    // Para CNN, adiciona o caminho da imagem
-                    imagePaths.add(file.getAbsolutePath());
-                } else {
-                    // Para HOG e ORB, carrega o frame e pré-processa
-                    Mat frame = imread(file.getAbsolutePath());
-                    frame = preprocessFrame(frame);
-                    frames.add(frame);
+    private String descriptorHeader(String extractorName) {
+        return extractorName.equals("CNN") ? cnnExtractor.descriptorFileHeader() : null;
+    }
+
+    public static String matToString(Mat mat) {
+        StringBuilder sb = new StringBuilder();
+        // Concatenar número de linhas, colunas e tipo de dados
+        sb.append(mat.rows()).append(": ").append(mat.cols()).append(": ").append(mat.type()).append("\n");
+        // Concatenar dados do Mat
+        ByteBuffer buffer = mat.createBuffer();
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            sb.append(String.format("%02X", b & 0xFF)).append(" ");
+        }
+        sb.append("\n");
+        return sb.toString();
+    }
+
+    // Mesmo formato de matToString, a partir dos bytes já copiados do Mat
+    public static String orbDescriptorsToString(OrbDescriptors descriptors) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(descriptors.getRows()).append(": ").append(descriptors.getCols()).append(": ").append(descriptors.getType()).append("\n");
+        for (byte b : descriptors.getData()) {
+            sb.append(String.format("%02X", b & 0xFF)).append(" ");
+        }
+        sb.append("\n");
+        return sb.toString();
+    }
+
+    public static String indArrayToString(INDArray array) {
+        // Convertendo o INDArray para uma string no formato CSV
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < array.rows(); i++) {
+            for (int j = 0; j < array.columns(); j++) {
+                sb.append(array.getDouble(i, j));
+                if (j < array.columns() - 1) {
+                    sb.append(",");
                 }
             }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
 
-            // Processa os quadros em lote e escreve os descritores
-            switch (option) {
-                case 1:
-                    List<float[]> hogFeaturesList = hogExtractor.hogExtractBatch(frames);
-                    for (float[] hogFeatures : hogFeaturesList) {
-                        writer.write(Arrays.toString(hogFeatures) + "\n\n");
-                    }
-                    break;
-                case 2:
-                    List<Mat> orbDescriptorsList = orbExtractor.orbFeaturesExtractorBatch(frames);
-                    for (Mat orbDescriptors : orbDescriptorsList) {
-                        writer.write(matToString(orbDescriptors) + "\n\n");
-                    }
-                    break;
-                case 3:
-                    List<INDArray> cnnFeaturesList = cnnExtractor.cnnFeaturesExtractorBatch(imagePaths);
-                    for (INDArray cnnFeatures : cnnFeaturesList) {
-                        writer.write(indArrayToString(cnnFeatures) + "\n\n");
-                    }
-                    break;
+
+    public void extractFeatures(String framesPath, String videoName) throws IOException {
+        String extractorName = chooseExtractor();
+        if (extractorName == null) {
+            return;
+        }
+        File descriptorsDir = createDescriptorsDir(videoName, extractorName);
+
+        try (FrameSource frameSource = FrameSource.open(new File(framesPath));
+             DescriptorOutput output = openDescriptorOutput(descriptorsDir, extractorName)) {
+            if (extractorName.equals("CNN")) {
+                writeCnnDescriptorsPipelined(frameSource, output);
+                return;
+            }
+
+            // Processa os quadros em lotes, reaproveitando os Mats do pré-processamento, e escreve os descritores
+            for (int start = 0; start < frameSource.size(); start += BATCH_SIZE) {
+                List<Mat> sourceFrames = new ArrayList<>(BATCH_SIZE);
+                for (int i = start; i < Math.min(frameSource.size(), start + BATCH_SIZE); i++) {
+                    sourceFrames.add(frameSource.readFrameAt(i));
+                }
+                List<Mat> frames = FramePreprocessor.preprocessBatch(sourceFrames);
+                switch (extractorName) {
+                    case "HOG":
+                        int hogSize = hogExtractor.getDescriptorSize();
+                        float[] hogSlab = new float[frames.size() * hogSize];
+                        hogExtractor.hogExtractBatch(frames, hogSlab, 0);
+                        for (int i = 0; i < frames.size(); i++) {
+                            output.writeFloats(frameSource.frameIndexAt(start + i), hogSlab, i * hogSize);
+                        }
+                        break;
+                    case "ORB":
+                        List<OrbDescriptors> orbDescriptorsList = orbExtractor.orbExtractBatch(frames);
+                        for (int i = 0; i < orbDescriptorsList.size(); i++) {
+                            output.writeOrb(frameSource.frameIndexAt(start + i), orbDescriptorsList.get(i));
+                        }
+                        break;
+                }
+                for (Mat sourceFrame : sourceFrames) {
+                    sourceFrame.release();
+                }
             }
         }
     }
 
+    // Leitura dos quadros em paralelo com a inferência; os descritores são gravados na ordem dos quadros
+    private void writeCnnDescriptorsPipelined(FrameSource frameSource, DescriptorOutput output) throws IOException {
+        writeCnnDescriptorsPipelined(frameSource, 0, output, null);
+    }
+
+    // Com checkpoint, confirma a cada BATCH_SIZE quadros gravados
+    private void writeCnnDescriptorsPipelined(FrameSource frameSource, int firstFrame, DescriptorOutput output, ExtractionCheckpoint checkpoint) throws IOException {
+        try {
+            cnnExtractor.cnnFeaturesExtractorPipelined(frameSource, firstFrame, (position, cnnFeatures) -> {
+                output.writeFeatures(frameSource.frameIndexAt(position), cnnFeatures);
+                if (checkpoint != null && (position + 1) % BATCH_SIZE == 0) {
+                    checkpoint.commit(position + 1);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Falha na extração CNN em pipeline.", e);
+        }
+    }
+
     public void extractFeaturesV2(String framesPath, String videoName) throws IOException, InterruptedException, ExecutionException {
-        File dir = new File(framesPath);
-        File[] files = dir.listFiles();
-        if (files == null) {
-            throw new IOException("Não foi possível listar os arquivos no diretório especificado.");
+        List<String> extractorNames = chooseExtractors();
+        if (extractorNames.isEmpty()) {
+            return;
         }
-        Arrays.sort(files);
+        if (extractorNames.size() > 1) {
+            extractFeaturesMulti(framesPath, videoName, extractorNames);
+            return;
+        }
+        String extractorName = extractorNames.get(0);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (FrameSource frameSource = FrameSource.open(new File(framesPath));
+             ExtractionCheckpoint checkpoint = openCheckpoint(framesPath, videoName, extractorName, frameSource.size())) {
+            DescriptorOutput output = checkpoint.getOutput();
+            int firstFrame = checkpoint.getCommittedFrames();
+            if (extractorName.equals("CNN")) {
+                // A inferência já usa todos os núcleos; o paralelismo da CNN fica na leitura dos quadros
+                writeCnnDescriptorsPipelined(frameSource, firstFrame, output, checkpoint);
+                checkpoint.complete();
+                return;
+            }
 
-        Scanner scanner = new Scanner(System.in);
-        System.out.println("Escolha o extrator de características:");
-        System.out.println("1 - HOG");
-        System.out.println("2 - ORB");
-        System.out.println("3 - CNN");
-        System.out.println("4 - Voltar");
-        System.out.print("Opção: ");
-        int option = scanner.nextInt();
+            /*
+            Os lotes são processados em paralelo e gravados na ordem dos quadros pelo estágio de gravação,
+            com um checkpoint depois de cada lote. No máximo 2 lotes por thread ficam em andamento.
+             */
+            try (OrderedDescriptorWriter writer = new OrderedDescriptorWriter(output, firstFrame, 2 * threads, checkpoint::commit)) {
+                for (int start = firstFrame; start < frameSource.size(); start += BATCH_SIZE) {
+                    final int batchStart = start;
+                    final int batchEnd = Math.min(frameSource.size(), start + BATCH_SIZE);
+                    writer.submit(executor, batchEnd - batchStart, () -> extractBatch(frameSource, batchStart, batchEnd, extractorName));
+                }
+                writer.finish();
+            }
+            checkpoint.complete();
+        } finally {
+            executor.shutdownNow();
+            descriptorCache.logStatistics();
+        }
+    }
 
-        String extractorName = "";
-        switch (option) {
-            case 1:
-                extractorName = "HOG";
-                break;
-            case 2:
-                extractorName = "ORB";
+    private OrderedDescriptorWriter.Batch extractBatch(FrameSource frameSource, int start, int end, String extractorName) throws IOException {
+        List<Mat> sourceFrames = new ArrayList<>();
+        for (int j = start; j < end; j++) {
+            sourceFrames.add(frameSource.readFrameAt(j));
+        }
+        List<Mat> batchFrames = FramePreprocessor.preprocessBatch(sourceFrames);
+
+        OrderedDescriptorWriter.Batch batch = null;
+        switch (extractorName) {
+            case "HOG":
+                // Um vetor por lote, guardado só até a gravação do lote
+                int hogSize = hogExtractor.getDescriptorSize();
+                int frameCount = batchFrames.size();
+                float[] hogSlab = new float[frameCount * hogSize];
+                hogExtractor.hogExtractBatch(batchFrames, hogSlab, 0);
+                batch = output -> {
+                    for (int i = 0; i < frameCount; i++) {
+                        output.writeFloats(frameSource.frameIndexAt(start + i), hogSlab, i * hogSize);
+                    }
+                };
                 break;
-            case 3:
-                extractorName = "CNN";
+            case "ORB":
+                List<OrbDescriptors> orbDescriptorsList = orbExtractor.orbExtractBatch(batchFrames);
+                batch = output -> {
+                    for (int i = 0; i < orbDescriptorsList.size(); i++) {
+                        output.writeOrb(frameSource.frameIndexAt(start + i), orbDescriptorsList.get(i));
+                    }
+                };
                 break;
-            case 4:
-                return;
-            default:
-                System.out.println("Opção inválida.");
-                return;
         }
+        for (Mat sourceFrame : sourceFrames) {
+            sourceFrame.release();
+        }
+        return batch;
+    }
 
-        File baseDir = new File("D:\\UFU\\tcc_video_frames\\descriptores");
-        int dirIndex = 1;
-        File descriptorsDir;
-        do {
-            descriptorsDir = new File(baseDir, videoName + "extracao" + extractorName + dirIndex);
-            dirIndex++;
-        } while (descriptorsDir.exists());
-
-        if (!descriptorsDir.mkdirs()) {
-            throw new IOException("Não foi possível criar o diretório para os descritores.");
+    /*
+    Retoma a extração interrompida das mesmas imagens com o mesmo extrator, se houver; senão cria um
+    novo diretório de descritores. Para a CNN a rede faz parte da identificação, para não misturar
+    descritores de redes diferentes no mesmo arquivo.
+     */
+    private ExtractionCheckpoint openCheckpoint(String framesPath, String videoName, String extractorName, int totalFrames) throws IOException {
+        // O nome do arquivo já distingue o formato: uma extração em texto nunca é retomada em binário
+        String descriptorFileName = DescriptorOutput.fileName(extractorName, isBinaryOutput());
+        String source = new File(framesPath).getAbsolutePath();
+        String extractorId = extractorName.equals("CNN") ? extractorName + ":" + cnnExtractor.getBackbone() : extractorName;
+        DescriptorFile.ValueType type = descriptorType(extractorName);
+        if (extractorName.equals("CNN") && isBinaryOutput()) {
+            // Nem a precisão pode mudar no meio de um arquivo
+            extractorId += ":" + type;
+        }
+        int dimension = descriptorDimension(extractorName);
+        String header = descriptorHeader(extractorName);
+        ExtractionCheckpoint.OutputFactory outputFactory = (file, stream, newFile) ->
+                new DescriptorOutput(file, stream, extractorName, type, dimension, header, newFile);
+        ExtractionCheckpoint checkpoint = ExtractionCheckpoint.resume(new File(DESCRIPTORS_BASE_PATH), videoName + "extracao" + extractorName,
+                descriptorFileName, source, extractorId, totalFrames, outputFactory);
+        if (checkpoint == null) {
+            File descriptorsDir = createDescriptorsDir(videoName, extractorName);
+            checkpoint = ExtractionCheckpoint.start(descriptorsDir, new File(descriptorsDir, descriptorFileName), source,
+                    extractorId, totalFrames, outputFactory);
+            checkpoint.commit(0);
         }
+        return checkpoint;
+    }
+
+
+    // Descritores de um quadro para cada extrator escolhido na extração conjunta
+    private static final class MultiFrameFeatures {
+        private float[] hog;
+        private OrbDescriptors orb;
+        private INDArray cnnInput;
+        private DescriptorCache.Key cnnKey;
+        private INDArray cnn;
+    }
 
+    /*
+    Extração conjunta: cada quadro é lido uma única vez e o mesmo pré-processamento (redimensionamento e
+    filtro Gaussiano) alimenta HOG e ORB, enquanto a CNN recebe o quadro original. Os quadros de um lote são
+    processados em paralelo; a leitura do lote seguinte começa antes da inferência CNN do lote atual.
+    Cada extrator grava no seu próprio diretório de descritores, como nas extrações individuais.
+     */
+    public void extractFeaturesMulti(String framesPath, String videoName, List<String> extractorNames) throws IOException, InterruptedException, ExecutionException {
+        boolean hog = extractorNames.contains("HOG");
+        boolean orb = extractorNames.contains("ORB");
+        boolean cnn = extractorNames.contains("CNN");
+        Map<String, DescriptorOutput> outputs = new LinkedHashMap<>();
         ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        List<Callable<Void>> tasks = new ArrayList<>();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(descriptorsDir, "descritores" + extractorName + ".txt")))) {
-            // Subdivide a lista de arquivos em lotes para processamento paralelo
-            for (int i = 0; i < files.length; i += BATCH_SIZE) {
-                final int start = i;
-                final int end = Math.min(files.length, i + BATCH_SIZE);
-
-                tasks.add(() -> {
-                    List<Mat> batchFrames = new ArrayList<>();
-                    List<String> batchImagePaths = new ArrayList<>();
-
-                    for (int j = start; j < end; j++) {
-                        if (option == 3) {
-                            batchImagePaths.add(files[j].getAbsolutePath());
-                        } else {
-                            Mat frame = imread(files[j].getAbsolutePath());
-                            frame = preprocessFrame(frame);
-                            batchFrames.add(frame);
+        long startTime = System.currentTimeMillis();
+        int processedFrames = 0;
+        Throwable failure = null;
+
+        try (FrameSource frameSource = FrameSource.open(new File(framesPath))) {
+            for (String extractorName : extractorNames) {
+                outputs.put(extractorName, openDescriptorOutput(createDescriptorsDir(videoName, extractorName), extractorName));
+            }
+
+            List<Future<MultiFrameFeatures>> batch = submitMultiBatch(executor, frameSource, 0, hog, orb, cnn);
+            for (int start = 0; start < frameSource.size(); start += BATCH_SIZE) {
+                List<MultiFrameFeatures> results = new ArrayList<>(batch.size());
+                for (Future<MultiFrameFeatures> future : batch) {
+                    results.add(future.get());
+                }
+                batch = submitMultiBatch(executor, frameSource, start + BATCH_SIZE, hog, orb, cnn);
+
+                if (cnn) {
+                    // Só os quadros que não estavam no cache de descritores vão para a inferência
+                    List<MultiFrameFeatures> pendingCnn = new ArrayList<>();
+                    List<INDArray> cnnInputs = new ArrayList<>();
+                    for (MultiFrameFeatures result : results) {
+                        if (result.cnn == null) {
+                            pendingCnn.add(result);
+                            cnnInputs.add(result.cnnInput);
                         }
                     }
-
-                    switch (option) {
-                        case 1:
-                            List<float[]> hogFeaturesBatch = hogExtractor.hogExtractBatch(batchFrames);
-                            synchronized (writer) {
-                                for (float[] hogFeatures : hogFeaturesBatch) {
-                                    writer.write(Arrays.toString(hogFeatures) + "\n\n");
-                                }
-                            }
-                            break;
-                        case 2:
-                            List<Mat> orbDescriptorsBatch = orbExtractor.orbFeaturesExtractorBatch(batchFrames);
-                            synchronized (writer) {
-                                for (Mat orbDescriptors : orbDescriptorsBatch) {
-                                    writer.write(matToString(orbDescriptors) + "\n\n");
-                                }
-                            }
-                            break;
-                        case 3:
-                            List<INDArray> cnnFeaturesBatch = cnnExtractor.cnnFeaturesExtractorBatch(batchImagePaths);
-                            synchronized (writer) {
-                                for (INDArray cnnFeatures : cnnFeaturesBatch) {
-                                    writer.write(indArrayToString(cnnFeatures) + "\n\n");
-                                }
-                            }
-                            break;
+                    if (!cnnInputs.isEmpty()) {
+                        List<INDArray> cnnFeatures = cnnExtractor.cnnFeaturesExtractorBatchFromInputs(cnnInputs);
+                        for (int i = 0; i < pendingCnn.size(); i++) {
+                            pendingCnn.get(i).cnn = cnnFeatures.get(i);
+                            cnnExtractor.storeFeatures(pendingCnn.get(i).cnnKey, cnnFeatures.get(i));
+                        }
+                    }
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    MultiFrameFeatures result = results.get(i);
+                    if (hog) {
+                        outputs.get("HOG").writeFloats(frameSource.frameIndexAt(start + i), result.hog);
+                    }
+                    if (orb) {
+                        outputs.get("ORB").writeOrb(frameSource.frameIndexAt(start + i), result.orb);
                     }
-                    return null;
-                });
+                    if (cnn) {
+                        outputs.get("CNN").writeFeatures(frameSource.frameIndexAt(start + i), result.cnn);
+                    }
+                }
+                processedFrames += results.size();
             }
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            closeAll(outputs.values(), failure);
+        }
 
-            List<Future<Void>> futures = executor.invokeAll(tasks);
+        long endTime = System.currentTimeMillis();
+        log.info("Extração conjunta {} concluída: {} quadros em {} ms", extractorNames, processedFrames, endTime - startTime);
+        descriptorCache.logStatistics();
+    }
 
-            // Espera todas as tarefas serem concluídas
-            for (Future<Void> future : futures) {
-                future.get();
+    /*
+    Fecha todos os arquivos, mesmo quando um close falha, como o try-with-resources: as falhas do close são
+    anexadas (addSuppressed) à falha da extração, se houver, ou à primeira falha de close, que é lançada.
+     */
+    private static void closeAll(Collection<DescriptorOutput> outputs, Throwable failure) throws IOException {
+        Exception closeFailure = null;
+        for (DescriptorOutput output : outputs) {
+            try {
+                output.close();
+            } catch (IOException | RuntimeException e) {
+                if (failure != null) {
+                    failure.addSuppressed(e);
+                } else if (closeFailure == null) {
+                    closeFailure = e;
+                } else {
+                    closeFailure.addSuppressed(e);
+                }
             }
-        } finally {
-            executor.shutdown();
+        }
+        if (closeFailure instanceof IOException) {
+            throw (IOException) closeFailure;
+        }
+        if (closeFailure != null) {
+            throw (RuntimeException) closeFailure;
         }
     }
 
+    private List<Future<MultiFrameFeatures>> submitMultiBatch(ExecutorService executor, FrameSource frameSource, int start,
+                                                              boolean hog, boolean orb, boolean cnn) {
+        List<Future<MultiFrameFeatures>> futures = new ArrayList<>();
+        for (int position = start; position < Math.min(frameSource.size(), start + BATCH_SIZE); position++) {
+            final int framePosition = position;
+            futures.add(executor.submit(() -> {
+                MultiFrameFeatures result = new MultiFrameFeatures();
+                Mat frame = frameSource.readFrameAt(framePosition);
+                try {
+                    if (hog || orb) {
+                        Mat preprocessed = FramePreprocessor.preprocess(frame);
+                        if (hog) {
+                            result.hog = hogExtractor.hogExtract(preprocessed);
+                        }
+                        if (orb) {
+                            result.orb = orbExtractor.orbExtract(preprocessed);
+                        }
+                    }
+                    if (cnn) {
+                        result.cnnKey = cnnExtractor.cacheKey(frame);
+                        result.cnn = cnnExtractor.cachedFeatures(result.cnnKey);
+                        if (result.cnn == null) {
+                            result.cnnInput = cnnExtractor.matToPreProcessedINDArray(frame);
+                        }
+                    }
+                } finally {
+                    frame.release();
+                }
+                return result;
+            }));
+        }
+        return futures;
+    }
 }
@@ -0,0 +1,80 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacv.FFmpegFrameFilter;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Configuração, por extrator, da etapa de filtros aplicada aos quadros logo após a decodificação
+@Service
+@Slf4j
+public class FrameFilterSettings {
+
+    @Value("${tcc.filtro.hog.fps:0}")
+    private double hogFps;
+
+    @Value("${tcc.filtro.hog.escala:}")
+    private String hogScale;
+
+    @Value("${tcc.filtro.hog.cinza:false}")
+    private boolean hogGray;
+
+    @Value("${tcc.filtro.orb.fps:0}")
+    private double orbFps;
+
+    @Value("${tcc.filtro.orb.escala:}")
+    private String orbScale;
+
+    @Value("${tcc.filtro.orb.cinza:false}")
+    private boolean orbGray;
+
+    @Value("${tcc.filtro.cnn.fps:0}")
+    private double cnnFps;
+
+    @Value("${tcc.filtro.cnn.escala:}")
+    private String cnnScale;
+
+    public FrameFilterStage open(String extractorName, FFmpegFrameGrabber grabber) throws FFmpegFrameFilter.Exception {
+        double fps;
+        String scale;
+        boolean gray;
+        switch (extractorName) {
+            case "HOG":
+                fps = hogFps;
+                scale = hogScale;
+                gray = hogGray;
+                break;
+            case "ORB":
+                fps = orbFps;
+                scale = orbScale;
+                gray = orbGray;
+                break;
+            default:
+                // A VGG16 recebe imagens de 3 canais, então a CNN não tem a opção de tons de cinza
+                fps = cnnFps;
+                scale = cnnScale;
+                gray = false;
+                break;
+        }
+
+        List<String> filters = new ArrayList<>();
+        if (scale != null && !scale.isBlank()) {
+            filters.add("scale=" + scale.trim());
+        }
+        if (gray) {
+            filters.add("format=gray");
+        }
+        String filterGraph = String.join(",", filters);
+
+        int stride = 1;
+        if (fps > 0 && fps < grabber.getFrameRate()) {
+            stride = (int) Math.round(grabber.getFrameRate() / fps);
+        }
+        log.info("Filtros do decodificador para {}: '{}', 1 a cada {} quadros", extractorName, filterGraph, stride);
+        return new FrameFilterStage(filterGraph, stride, grabber);
+    }
+}
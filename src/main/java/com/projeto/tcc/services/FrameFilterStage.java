@@ -0,0 +1,84 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.javacv.FFmpegFrameFilter;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+
+/*
+Etapa de pré-processamento dentro do laço do grabber: descarta quadros para atingir a taxa pedida
+e passa os restantes por um FFmpegFrameFilter (escala e formato de pixel), de forma que o quadro
+já sai do decodificador reduzido. Sem filtro configurado a etapa só converte o quadro para Mat.
+
+O FFmpegFrameFilter renumera os PTS dos quadros, por isso a redução de taxa é feita aqui pelo
+índice real do quadro e o grafo recebe apenas filtros que produzem um quadro por quadro de entrada;
+o índice, o timestamp e a flag de quadro-chave originais são reassociados na ordem de saída.
+ */
+public class FrameFilterStage implements Closeable {
+
+    private final FFmpegFrameFilter filter;
+    private final int stride;
+    private final OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+    private final ArrayDeque<DecodedFrame> pending = new ArrayDeque<>();
+    private int lastBucket = -1;
+
+    FrameFilterStage(String filters, int stride, FFmpegFrameGrabber grabber) throws FFmpegFrameFilter.Exception {
+        this.stride = Math.max(1, stride);
+        if (filters == null || filters.isEmpty()) {
+            this.filter = null;
+            return;
+        }
+        this.filter = new FFmpegFrameFilter(filters, grabber.getImageWidth(), grabber.getImageHeight());
+        filter.setPixelFormat(grabber.getPixelFormat());
+        filter.setFrameRate(grabber.getFrameRate());
+        filter.start();
+    }
+
+    // Recebe um quadro do grabber e entrega ao consumidor zero ou mais quadros já filtrados
+    public void process(Frame frame, int frameIndex, SegmentedVideoDecoder.FrameConsumer consumer) throws Exception {
+        // Mantém o primeiro quadro decodificado de cada intervalo de "stride" quadros
+        int bucket = frameIndex / stride;
+        if (bucket == lastBucket) {
+            return;
+        }
+        lastBucket = bucket;
+
+        if (filter == null) {
+            consumer.accept(new DecodedFrame(frameIndex, frame.timestamp, frame.keyFrame, converter.convert(frame)));
+            return;
+        }
+        pending.addLast(new DecodedFrame(frameIndex, frame.timestamp, frame.keyFrame, null));
+        filter.push(frame);
+        pull(consumer);
+    }
+
+    // Esvazia os quadros retidos pelo filtro ao fim do vídeo
+    public void finish(SegmentedVideoDecoder.FrameConsumer consumer) throws Exception {
+        if (filter != null) {
+            filter.push(null);
+            pull(consumer);
+        }
+    }
+
+    private void pull(SegmentedVideoDecoder.FrameConsumer consumer) throws Exception {
+        Frame filtered;
+        while ((filtered = filter.pullImage()) != null) {
+            DecodedFrame source = pending.pollFirst();
+            if (source == null) {
+                break;
+            }
+            consumer.accept(new DecodedFrame(source.getFrameIndex(), source.getTimestamp(), source.isKeyFrame(), converter.convert(filtered)));
+        }
+    }
+
+    @Override
+    public void close() throws FFmpegFrameFilter.Exception {
+        if (filter != null) {
+            filter.stop();
+            filter.release();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.projeto.tcc.services;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Arquivo quadros.csv gravado ao lado do arquivo de descritores: uma linha por descritor, na mesma ordem,
+com o índice real do quadro, o timestamp, a cena (tomada) a que pertence e o peso, ou seja, quantos
+quadros decodificados aquele quadro representa depois do descarte de quase-duplicados.
+ */
+public final class FrameIndexFile {
+
+    public static final String FILE_NAME = "quadros.csv";
+    private static final String HEADER = "quadro;timestamp;cena;peso";
+
+    public static class Entry {
+        private final int frameIndex;
+        private final long timestamp;
+        private final int shot;
+        private int weight;
+
+        public Entry(int frameIndex, long timestamp, int shot, int weight) {
+            this.frameIndex = frameIndex;
+            this.timestamp = timestamp;
+            this.shot = shot;
+            this.weight = weight;
+        }
+
+        public int getFrameIndex() {
+            return frameIndex;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getShot() {
+            return shot;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        void addWeight(int frames) {
+            weight += frames;
+        }
+    }
+
+    private FrameIndexFile() {
+    }
+
+    public static void write(File descriptorsDir, List<Entry> entries) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(descriptorsDir, FILE_NAME)))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Entry entry : entries) {
+                writer.write(entry.frameIndex + ";" + entry.timestamp + ";" + entry.shot + ";" + entry.weight);
+                writer.newLine();
+            }
+        }
+    }
+
+    // Entradas do arquivo ao lado do arquivo de descritores, ou null se ele não existir
+    public static List<Entry> readFor(File descriptorFile) throws IOException {
+        File indexFile = new File(descriptorFile.getParentFile(), FILE_NAME);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] parts = line.split(";");
+                entries.add(new Entry(Integer.parseInt(parts[0]), Long.parseLong(parts[1]),
+                        Integer.parseInt(parts[2]), Integer.parseInt(parts[3])));
+            }
+        }
+        return entries;
+    }
+
+    // Peso de cada descritor na ordem do arquivo; sem o quadros.csv todos os pesos são 1
+    public static int[] readWeights(File descriptorFile) throws IOException {
+        List<Entry> entries = readFor(descriptorFile);
+        if (entries == null) {
+            return null;
+        }
+        int[] weights = new int[entries.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = entries.get(i).weight;
+        }
+        return weights;
+    }
+
+    public static int weightAt(int[] weights, int position) {
+        return weights == null || position >= weights.length ? 1 : weights[position];
+    }
+}
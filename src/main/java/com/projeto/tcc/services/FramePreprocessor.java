@@ -0,0 +1,71 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.GaussianBlur;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/*
+Pré-processamento dos quadros para HOG e ORB: redimensiona para 224x224 (a menos que o filtro do
+decodificador já tenha entregue nesse tamanho) e aplica o filtro Gaussiano 9x9 com sigma 1.5.
+Cada thread tem seus próprios Mats de saída, reaproveitados de um lote para o outro; como o OpenCV só
+realoca o destino quando o tamanho ou o tipo mudam, em regime nenhuma memória nativa é alocada.
+Contrato de posse:
+- o quadro de entrada continua sendo de quem chamou e não é alterado;
+- os Mats devolvidos pertencem à thread: só valem até a próxima chamada desta classe na mesma thread,
+  não podem ser liberados nem guardados por quem chamou e não devem ser passados a outra thread.
+ */
+public final class FramePreprocessor {
+
+    private static final int TARGET_WIDTH = 224;
+    private static final int TARGET_HEIGHT = 224;
+    private static final Size TARGET_SIZE = new Size(TARGET_WIDTH, TARGET_HEIGHT);
+    private static final Size BLUR_KERNEL = new Size(9, 9);
+    private static final double BLUR_SIGMA = 1.5;
+
+    private static final ThreadLocal<Mat> RESIZED = ThreadLocal.withInitial(Mat::new);
+    private static final ThreadLocal<List<Mat>> OUTPUTS = ThreadLocal.withInitial(ArrayList::new);
+
+    private FramePreprocessor() {
+    }
+
+    // Resultado no Mat de saída 0 da thread
+    public static Mat preprocess(Mat frame) {
+        Mat output = output(OUTPUTS.get(), 0);
+        preprocess(frame, output);
+        return output;
+    }
+
+    // Um Mat de saída da thread por quadro do lote, na mesma ordem
+    public static List<Mat> preprocessBatch(List<Mat> frames) {
+        List<Mat> outputs = OUTPUTS.get();
+        List<Mat> preprocessed = new ArrayList<>(frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            Mat output = output(outputs, i);
+            preprocess(frames.get(i), output);
+            preprocessed.add(output);
+        }
+        return preprocessed;
+    }
+
+    // Escreve em destination, que pertence a quem chamou e pode ser reaproveitado entre quadros
+    public static void preprocess(Mat frame, Mat destination) {
+        Mat source = frame;
+        if (frame.cols() != TARGET_WIDTH || frame.rows() != TARGET_HEIGHT) {
+            source = RESIZED.get();
+            resize(frame, source, TARGET_SIZE);
+        }
+        GaussianBlur(source, destination, BLUR_KERNEL, BLUR_SIGMA);
+    }
+
+    private static Mat output(List<Mat> outputs, int index) {
+        while (outputs.size() <= index) {
+            outputs.add(new Mat());
+        }
+        return outputs.get(index);
+    }
+}
@@ -67,68 +67,14 @@ public class FrameService2 {
 
 
     public void pointsFileHoleSet(File file, String filePath, String extractorName) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            List<Object> descriptors = new ArrayList<>();
-            List<String> descriptorLines = new ArrayList<>();
-            String line;
-            StringBuilder descriptorString = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-                if (extractorName.equals("HOG")) {
-                    if (line.trim().isEmpty()) {
-                        if (!descriptorLines.isEmpty()) {
-                            descriptors.add(hogExtractor.parseDescriptor(descriptorLines));
-                            descriptorLines.clear();
-                        }
-                    } else {
-                        descriptorLines.add(line);
-                    }
-                } else if (extractorName.equals("ORB")) {
-                    if (line.isEmpty()) {
-                        if (!descriptorLines.isEmpty()) {
-                            descriptors.add(ORBExtractor.stringToMat(String.join("\n", descriptorLines)));
-                            descriptorLines.clear();
-                        }
-                    } else {
-                        descriptorLines.add(line);
-                    }
-                } else if (extractorName.equals("CNN")) {
-                    if (line.trim().isEmpty()) {
-                        if (descriptorString.length() > 0) {
-                            descriptors.add(CNNExtractor.stringToINDArray(descriptorString.toString()));
-                            descriptorString.setLength(0); // Clear the StringBuilder
-                        }
-                    } else {
-                        descriptorString.append(line).append("\n");
-                    }
-                }
-            }
-
-            // Salva todos os descritores em um único arquivo Points File
-            if (!descriptors.isEmpty()) {
-                switch (extractorName) {
-                    case "HOG" -> {
-                        List<float[]> hogBatch = new ArrayList<>();
-                        for (Object obj : descriptors) {
-                            hogBatch.add((float[]) obj);
-                        }
-                        pointsFileGenerator.saveAsPointsFileHOG(hogBatch, filePath);
-                    }
-                    case "ORB" -> {
-                        List<Mat> orbBatch = new ArrayList<>();
-                        for (Object obj : descriptors) {
-                            orbBatch.add((Mat) obj);
-                        }
-                        pointsFileGenerator.saveAsPointsFileORB(orbBatch, filePath);
-                    }
-                    case "CNN" -> {
-                        List<INDArray> cnnBatch = new ArrayList<>();
-                        for (Object obj : descriptors) {
-                            cnnBatch.add((INDArray) obj);
-                        }
-                        pointsFileGenerator.saveAsPointsFileCNN(cnnBatch, filePath);
-                    }
-                }
-            }
+        // Salva todos os descritores do arquivo (texto ou binário) em um único arquivo Points File, rotulados pelo índice do quadro
+        int[] frameIndices = DescriptorReader.readFrameIndices(file);
+        if (extractorName.equals("ORB")) {
+            pointsFileGenerator.saveAsPointsFileORB(ORBExtractor.readDescriptors(file), frameIndices, filePath);
+        } else if (extractorName.equals("CNN")) {
+            pointsFileGenerator.saveAsPointsFileCNN(CNNExtractor.readDescriptors(file), frameIndices, filePath);
+        } else {
+            pointsFileGenerator.saveAsPointsFileHOG(HOGExtractor.readDescriptors(file), frameIndices, filePath);
         }
     }
 
@@ -0,0 +1,27 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+// Sequência de quadros de um vídeo já separado, na ordem do vídeo. As leituras podem ser feitas por várias threads.
+public interface FrameSource extends Closeable {
+
+    int size();
+
+    // Índice global (no vídeo) do quadro na posição informada
+    int frameIndexAt(int position);
+
+    // O Mat retornado pertence ao chamador
+    Mat readFrameAt(int position) throws IOException;
+
+    // Usa o manifesto quando existe; diretórios antigos, só com os arquivos de imagem, são listados e ordenados
+    static FrameSource open(File framesDir) throws IOException {
+        if (FrameStore.exists(framesDir)) {
+            return FrameStore.openReader(framesDir);
+        }
+        return new DirectoryFrameSource(framesDir);
+    }
+}
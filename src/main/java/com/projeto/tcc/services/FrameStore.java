@@ -0,0 +1,283 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_COLOR;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imdecode;
+
+/*
+Armazenamento dos quadros de um vídeo em dois arquivos:
+- quadros.store: os quadros codificados, concatenados na ordem em que foram gravados;
+- quadros.manifest: cabeçalho seguido de um registro de tamanho fixo por índice de quadro
+  (índice, flags, PTS, posição e tamanho no store). O registro do quadro N fica na posição
+  HEADER_SIZE + N * RECORD_SIZE, então o acesso a qualquer quadro é O(1).
+A quantidade de registros vem do tamanho do manifesto (índices sem quadro ficam zerados, sem a flag de
+presença), de modo que um store interrompido antes do close continua legível até o último quadro gravado.
+Todos os valores binários são little-endian, inclusive o cabeçalho (linhas, colunas, tipo) dos quadros
+RAW_BGR a partir da versão 2; na versão 1 esse cabeçalho era big-endian.
+ */
+public final class FrameStore {
+
+    public static final String STORE_FILE = "quadros.store";
+    public static final String MANIFEST_FILE = "quadros.manifest";
+
+    private static final int MAGIC = 0x4D434354; // "TCCM"
+    private static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 32;
+
+    private static final int FLAG_PRESENT = 1;
+    private static final int FLAG_KEY_FRAME = 2;
+
+    private FrameStore() {
+    }
+
+    public static boolean exists(File framesDir) {
+        return new File(framesDir, MANIFEST_FILE).isFile() && new File(framesDir, STORE_FILE).isFile();
+    }
+
+    public static Writer create(File framesDir, FrameCodec codec, double frameRate) throws IOException {
+        return new Writer(framesDir, codec, frameRate);
+    }
+
+    public static Reader openReader(File framesDir) throws IOException {
+        return new Reader(framesDir);
+    }
+
+    public static class Writer implements Closeable {
+
+        private final FileChannel store;
+        private final FileChannel manifest;
+        private final FrameCodec codec;
+        private final double frameRate;
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private int width;
+        private int height;
+        private int slotCount;
+        private final BitSet written = new BitSet();
+
+        private Writer(File framesDir, FrameCodec codec, double frameRate) throws IOException {
+            this.codec = codec;
+            this.frameRate = frameRate;
+            this.store = FileChannel.open(new File(framesDir, STORE_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.manifest = FileChannel.open(new File(framesDir, MANIFEST_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            writeHeader();
+        }
+
+        // Pode ser chamado por várias threads e em qualquer ordem de quadros; cada índice só pode ser gravado uma vez
+        public synchronized void append(int frameIndex, long timestamp, boolean keyFrame, int frameWidth, int frameHeight, byte[] encoded) throws IOException {
+            if (written.get(frameIndex)) {
+                throw new IOException("Quadro " + frameIndex + " gravado duas vezes (timestamp " + timestamp
+                        + "); o vídeo tem taxa de quadros variável e o índice calculado pelo timestamp se repetiu.");
+            }
+            written.set(frameIndex);
+            long offset = store.size();
+            ByteBuffer data = ByteBuffer.wrap(encoded);
+            while (data.hasRemaining()) {
+                store.write(data, offset + data.position());
+            }
+
+            record.clear();
+            record.putInt(frameIndex);
+            record.putInt(FLAG_PRESENT | (keyFrame ? FLAG_KEY_FRAME : 0));
+            record.putLong(timestamp);
+            record.putLong(offset);
+            record.putInt(encoded.length);
+            record.putInt(0);
+            record.flip();
+            long position = HEADER_SIZE + (long) frameIndex * RECORD_SIZE;
+            while (record.hasRemaining()) {
+                manifest.write(record, position + record.position());
+            }
+
+            slotCount = Math.max(slotCount, frameIndex + 1);
+            if (width == 0) {
+                width = frameWidth;
+                height = frameHeight;
+                writeHeader();
+            }
+        }
+
+        private void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(codec.ordinal());
+            header.putInt(width);
+            header.putInt(height);
+            header.putDouble(frameRate);
+            header.putInt(slotCount);
+            header.flip();
+            while (header.hasRemaining()) {
+                manifest.write(header, header.position());
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                writeHeader();
+                store.force(false);
+                manifest.force(false);
+            } finally {
+                store.close();
+                manifest.close();
+            }
+        }
+    }
+
+    public static class Reader implements FrameSource {
+
+        private final FileChannel store;
+        private final MappedByteBuffer manifest;
+        private final FrameCodec codec;
+        private final int width;
+        private final int height;
+        private final double frameRate;
+        private final int slotCount;
+        private final int[] frameIndices;
+        private final ByteOrder rawOrder;
+
+        private Reader(File framesDir) throws IOException {
+            try (FileChannel manifestChannel = FileChannel.open(new File(framesDir, MANIFEST_FILE).toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = manifestChannel.map(FileChannel.MapMode.READ_ONLY, 0, manifestChannel.size());
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                this.manifest = mapped;
+            }
+            if (manifest.capacity() < HEADER_SIZE || manifest.getInt(0) != MAGIC) {
+                throw new IOException("Manifesto de quadros inválido em " + framesDir);
+            }
+            int version = manifest.getInt(4);
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Versão de manifesto não suportada: " + version);
+            }
+            this.rawOrder = version == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            this.codec = FrameCodec.values()[manifest.getInt(8)];
+            this.width = manifest.getInt(12);
+            this.height = manifest.getInt(16);
+            this.frameRate = manifest.getDouble(20);
+            this.slotCount = (manifest.capacity() - HEADER_SIZE) / RECORD_SIZE;
+
+            int[] present = new int[slotCount];
+            int count = 0;
+            for (int i = 0; i < slotCount; i++) {
+                if (isPresent(i)) {
+                    present[count++] = i;
+                }
+            }
+            this.frameIndices = Arrays.copyOf(present, count);
+            this.store = FileChannel.open(new File(framesDir, STORE_FILE).toPath(), StandardOpenOption.READ);
+        }
+
+        public FrameCodec getCodec() {
+            return codec;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public double getFrameRate() {
+            return frameRate;
+        }
+
+        public boolean isPresent(int frameIndex) {
+            return frameIndex >= 0 && frameIndex < slotCount && (flags(frameIndex) & FLAG_PRESENT) != 0;
+        }
+
+        public boolean isKeyFrame(int frameIndex) {
+            return (flags(frameIndex) & FLAG_KEY_FRAME) != 0;
+        }
+
+        public long timestamp(int frameIndex) {
+            return manifest.getLong(recordPosition(frameIndex) + 8);
+        }
+
+        // Bytes do quadro exatamente como foram gravados pelo codec
+        public byte[] readEncoded(int frameIndex) throws IOException {
+            if (!isPresent(frameIndex)) {
+                throw new IOException("Quadro " + frameIndex + " não existe no manifesto.");
+            }
+            int position = recordPosition(frameIndex);
+            long offset = manifest.getLong(position + 16);
+            int length = manifest.getInt(position + 24);
+            ByteBuffer data = ByteBuffer.allocate(length);
+            while (data.hasRemaining()) {
+                if (store.read(data, offset + data.position()) < 0) {
+                    throw new IOException("Fim inesperado do arquivo de quadros.");
+                }
+            }
+            return data.array();
+        }
+
+        public Mat readFrame(int frameIndex) throws IOException {
+            return decode(readEncoded(frameIndex), codec, rawOrder);
+        }
+
+        @Override
+        public int size() {
+            return frameIndices.length;
+        }
+
+        @Override
+        public int frameIndexAt(int position) {
+            return frameIndices[position];
+        }
+
+        @Override
+        public Mat readFrameAt(int position) throws IOException {
+            return readFrame(frameIndices[position]);
+        }
+
+        private int flags(int frameIndex) {
+            return manifest.getInt(recordPosition(frameIndex) + 4);
+        }
+
+        private int recordPosition(int frameIndex) {
+            return HEADER_SIZE + frameIndex * RECORD_SIZE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            store.close();
+        }
+    }
+
+    // rawOrder: ordem dos bytes do cabeçalho RAW_BGR (ver comentário da classe)
+    static Mat decode(byte[] encoded, FrameCodec codec, ByteOrder rawOrder) throws IOException {
+        if (codec == FrameCodec.RAW_BGR) {
+            ByteBuffer buffer = ByteBuffer.wrap(encoded).order(rawOrder);
+            Mat mat = new Mat(buffer.getInt(), buffer.getInt(), buffer.getInt());
+            mat.data().put(encoded, buffer.position(), encoded.length - buffer.position());
+            return mat;
+        }
+        BytePointer pointer = new BytePointer(encoded);
+        Mat buffer = new Mat(1, encoded.length, CV_8UC1, pointer);
+        Mat mat = imdecode(buffer, IMREAD_COLOR);
+        buffer.release();
+        pointer.deallocate();
+        if (mat == null || mat.empty()) {
+            throw new IOException("Não foi possível decodificar o quadro.");
+        }
+        return mat;
+    }
+}
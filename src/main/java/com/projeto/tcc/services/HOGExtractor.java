@@ -1,55 +1,153 @@
 package com.projeto.tcc.services;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.javacpp.FloatPointer;
-import org.bytedeco.opencv.opencv_core.Size;
-import org.opencv.core.MatOfFloat;
-import org.bytedeco.opencv.global.opencv_objdetect;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.bytedeco.opencv.opencv_objdetect.HOGDescriptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PreDestroy;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class HOGExtractor {
 
-    private final HOGDescriptor hog;
+    /*
+    O HOGDescriptor do OpenCV não deve ser compartilhado entre threads. Cada thread que extrai um lote
+    pega um HogWorker livre (HOGDescriptor + buffer nativo de saída reaproveitado) e o devolve ao terminar,
+    então existem no máximo tantos workers quanto threads extraindo ao mesmo tempo, e a memória nativa
+    é liberada de forma determinística no encerramento do serviço.
+     */
+    private final Deque<HogWorker> idleWorkers = new ConcurrentLinkedDeque<>();
+    private final Set<HogWorker> allWorkers = ConcurrentHashMap.newKeySet();
+    private final int descriptorSize;
+    // Parâmetros do HOGDescriptor, parte da chave do cache de descritores
+    private final String cacheConfiguration;
+
+    @Autowired
+    private DescriptorCache descriptorCache;
+
+    // Dimensões da base do índice usado no agrupamento (HogGroupIndex); 0 compara com todos os grupos
+    @Value("${tcc.agrupamento.hog.indice-dimensoes:16}")
+    private int groupIndexDimensions;
 
     public HOGExtractor() {
         // Inicialização do HOGDescriptor
-        hog = new HOGDescriptor();
+        HogWorker worker = new HogWorker();
+        descriptorSize = (int) worker.hog.getDescriptorSize();
+        HOGDescriptor hog = worker.hog;
+        cacheConfiguration = "HOG;janela=" + hog.winSize().width() + "x" + hog.winSize().height()
+                + ";bloco=" + hog.blockSize().width() + "x" + hog.blockSize().height()
+                + ";passo=" + hog.blockStride().width() + "x" + hog.blockStride().height()
+                + ";celula=" + hog.cellSize().width() + "x" + hog.cellSize().height()
+                + ";bins=" + hog.nbins() + ";tamanho=" + descriptorSize;
+        allWorkers.add(worker);
+        idleWorkers.push(worker);
+    }
+
+    // Tamanho de cada descritor: apenas a primeira janela do HOG é usada
+    public int getDescriptorSize() {
+        return descriptorSize;
     }
 
     public float[] hogExtract(Mat frame) {
-        // Criação do objeto FloatPointer para armazenar o descritor
-        FloatPointer descriptor = new FloatPointer();
-        hog.compute(frame, descriptor);
-        // Converte o descritor para vetor
-        int descriptorSize = (int) (hog.getDescriptorSize());
         float[] descriptorArray = new float[descriptorSize];
-        descriptor.get(descriptorArray);
+        HogWorker worker = borrowWorker();
+        try {
+            computeCached(worker, frame, descriptorArray, 0);
+        } finally {
+            idleWorkers.push(worker);
+        }
         return descriptorArray;
     }
 
     public List<float[]> hogExtractBatch(List<Mat> frames) {
-        List<float[]> descriptorsList = new ArrayList<>();
-        for (Mat frame : frames) {
-            descriptorsList.add(hogExtract(frame));
+        List<float[]> descriptorsList = new ArrayList<>(frames.size());
+        HogWorker worker = borrowWorker();
+        try {
+            for (Mat frame : frames) {
+                float[] descriptorArray = new float[descriptorSize];
+                computeCached(worker, frame, descriptorArray, 0);
+                descriptorsList.add(descriptorArray);
+            }
+        } finally {
+            idleWorkers.push(worker);
         }
         return descriptorsList;
     }
 
+    // Escreve o descritor do quadro i em slab[offset + i * getDescriptorSize()], sem alocar vetores por quadro
+    public void hogExtractBatch(List<Mat> frames, float[] slab, int offset) {
+        if (slab.length - offset < (long) frames.size() * descriptorSize) {
+            throw new IllegalArgumentException("Vetor de saída menor que " + frames.size() + " descritores.");
+        }
+        HogWorker worker = borrowWorker();
+        try {
+            for (int i = 0; i < frames.size(); i++) {
+                computeCached(worker, frames.get(i), slab, offset + i * descriptorSize);
+            }
+        } finally {
+            idleWorkers.push(worker);
+        }
+    }
 
-    public static double distanciaEuclidiana(float[] vector1, float[] vector2) {
-        double distancia = 0;
-        for (int i = 0; i < vector1.length; i++) {
-            distancia += Math.pow(vector1[i] - vector2[i], 2);
+    // Consulta o cache pelo conteúdo do quadro antes de calcular, e guarda o que for calculado
+    private void computeCached(HogWorker worker, Mat frame, float[] target, int offset) {
+        DescriptorCache.Key key = descriptorCache.key(frame, cacheConfiguration);
+        float[] cached = descriptorCache.getFloats(key);
+        if (cached != null && cached.length == descriptorSize) {
+            System.arraycopy(cached, 0, target, offset, descriptorSize);
+            return;
+        }
+        worker.compute(frame, target, offset);
+        if (key != null) {
+            descriptorCache.putFloats(key, Arrays.copyOfRange(target, offset, offset + descriptorSize));
+        }
+    }
+
+    private HogWorker borrowWorker() {
+        HogWorker worker = idleWorkers.poll();
+        if (worker == null) {
+            worker = new HogWorker();
+            allWorkers.add(worker);
+        }
+        return worker;
+    }
+
+    @PreDestroy
+    public void release() {
+        for (HogWorker worker : allWorkers) {
+            worker.close();
+        }
+        allWorkers.clear();
+        idleWorkers.clear();
+    }
+
+    private final class HogWorker {
+        private final HOGDescriptor hog = new HOGDescriptor();
+        // O adaptador de std::vector do JavaCPP troca a memória deste ponteiro a cada compute e libera a anterior
+        private final FloatPointer output = new FloatPointer();
+
+        void compute(Mat frame, float[] target, int offset) {
+            hog.compute(frame, output);
+            output.position(0).get(target, offset, descriptorSize);
+        }
+
+        void close() {
+            output.close();
+            hog.close();
         }
-        double distanciaEuclidiana = Math.sqrt(distancia);
+    }
+
+
+    public static double distanciaEuclidiana(float[] vector1, float[] vector2) {
+        double distanciaEuclidiana = Math.sqrt(VectorMath.squaredDistance(vector1, vector2));
 
         // Normalização para o intervalo [0, 1] usando uma função sigmoide
         double similaridade = 1 / (1 + Math.exp(distanciaEuclidiana));
@@ -69,32 +167,22 @@ public class HOGExtractor {
 
     public List<float[]> groupFramesHog(File descriptorFile, double similarityThreshold, double samplingPercentage) throws IOException {
         List<Group> groups = new ArrayList<>();
+        HogGroupIndex index = new HogGroupIndex(groupIndexDimensions, similarityThreshold);
         List<float[]> selectedDescriptors = new ArrayList<>();
+        // Quantos quadros cada descritor representa (quadros quase duplicados descartados na decodificação)
+        int[] weights = FrameIndexFile.readWeights(descriptorFile);
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(descriptorFile))) {
-            List<String> descriptorLines = new ArrayList<>();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isEmpty()) {
-                    if (!descriptorLines.isEmpty()) {
-                        float[] descriptor = parseDescriptor(descriptorLines);
-                        descriptorLines.clear();
-                        addToGroup(groups, descriptor, similarityThreshold);
-                    }
-                } else {
-                    descriptorLines.add(line);
-                }
-            }
-            if (!descriptorLines.isEmpty()) {
-                float[] descriptor = parseDescriptor(descriptorLines);
-                addToGroup(groups, descriptor, similarityThreshold);
+        try (DescriptorReader reader = DescriptorReader.open(descriptorFile)) {
+            while (reader.next()) {
+                addToGroup(groups, index, reader.copyFloats(), FrameIndexFile.weightAt(weights, reader.position()), similarityThreshold);
             }
         }
 
         // Process groups and select a percentage of descriptors from each group
         for (Group group : groups) {
             group.descriptors.sort((d1, d2) -> Double.compare(distanciaEuclidiana(group.average, d2), distanciaEuclidiana(group.average, d1)));
-            int elementsToSample = (int) (group.descriptors.size() * (samplingPercentage / 100.0));
+            // A porcentagem é aplicada sobre os quadros representados pelo grupo, limitada aos descritores existentes
+            int elementsToSample = (int) Math.min(group.descriptors.size(), group.weight * (samplingPercentage / 100.0));
             if (elementsToSample == 0 && !group.descriptors.isEmpty()) {
                 elementsToSample = 1; // Garante que pelo menos um elemento seja selecionado
             }
@@ -105,43 +193,44 @@ public class HOGExtractor {
         return selectedDescriptors;
     }
 
-    public float[] parseDescriptor(List<String> descriptorLines) {
-        // Remove os colchetes de todas as linhas
-        descriptorLines = descriptorLines.stream()
-                .map(line -> line.replaceAll("\\[|\\]", ""))
-                .collect(Collectors.toList());
-
-        // Concatena as linhas e divide por vírgulas
-        String allLines = String.join(" ", descriptorLines);
-        String[] partsArray = allLines.split(",\\s*");
-        float[] descriptor = new float[partsArray.length];
-        for (int i = 0; i < partsArray.length; i++) {
-            descriptor[i] = Float.parseFloat(partsArray[i]);
+    // Todos os descritores do arquivo (texto ou binário), na ordem dos quadros
+    public static List<float[]> readDescriptors(File descriptorFile) throws IOException {
+        try (DescriptorReader reader = DescriptorReader.open(descriptorFile)) {
+            return reader.stream(DescriptorReader::copyFloats).collect(Collectors.toCollection(ArrayList::new));
         }
-        return descriptor;
     }
 
-    private void addToGroup(List<Group> groups, float[] descriptor, double similarityThreshold) {
-        for (Group group : groups) {
+    // O primeiro grupo, na ordem de criação, que aceita o descritor; o índice descarta os que certamente não aceitam
+    private void addToGroup(List<Group> groups, HogGroupIndex index, float[] descriptor, int weight, double similarityThreshold) {
+        for (int position = 0; position < groups.size(); position++) {
+            if (!index.mayAccept(position, descriptor)) {
+                continue;
+            }
+            Group group = groups.get(position);
             if (group.isSimilar(descriptor, similarityThreshold)) {
-                group.add(descriptor);
+                group.add(descriptor, weight);
+                index.update(position);
                 return;
             }
         }
-        groups.add(new Group(descriptor));
+        Group group = new Group(descriptor, weight);
+        groups.add(group);
+        index.add(group.average);
     }
 
     private static class Group {
         private List<float[]> descriptors = new ArrayList<>();
         private float[] average;
+        private int weight;
 
-        Group(float[] descriptor) {
-            add(descriptor);
+        Group(float[] descriptor, int weight) {
+            add(descriptor, weight);
         }
 
-        void add(float[] descriptor) {
+        void add(float[] descriptor, int weight) {
             descriptors.add(descriptor);
-            updateAverage(descriptor);
+            this.weight += weight;
+            updateAverage(descriptor, weight);
         }
 
         boolean isSimilar(float[] descriptor, double similarityThreshold) {
@@ -153,12 +242,13 @@ public class HOGExtractor {
             return distance < similarityThreshold;
         }
 
-        private void updateAverage(float[] newDescriptor) {
+        // Média pesada pelos quadros que cada descritor representa; com peso 1 é a média simples
+        private void updateAverage(float[] newDescriptor, int newWeight) {
             if (average == null) {
                 average = newDescriptor.clone();
             } else {
                 for (int i = 0; i < average.length; i++) {
-                    average[i] = (average[i] * (descriptors.size() - 1) + newDescriptor[i]) / descriptors.size();
+                    average[i] = (average[i] * (weight - newWeight) + newWeight * newDescriptor[i]) / weight;
                 }
             }
         }
@@ -166,32 +256,14 @@ public class HOGExtractor {
     }
 
     public List<float[]> sampleRandomDescriptors(File descriptorFile, double samplingPercentage) throws IOException {
-        List<float[]> allDescriptors = new ArrayList<>();
-
-        // Lendo e parseando todos os descritores do arquivo
-        try (BufferedReader reader = new BufferedReader(new FileReader(descriptorFile))) {
-            List<String> descriptorLines = new ArrayList<>();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isEmpty()) {
-                    if (!descriptorLines.isEmpty()) {
-                        float[] descriptor = parseDescriptor(descriptorLines);
-                        allDescriptors.add(descriptor);
-                        descriptorLines.clear();
-                    }
-                } else {
-                    descriptorLines.add(line);
-                }
-            }
-            if (!descriptorLines.isEmpty()) {
-                float[] descriptor = parseDescriptor(descriptorLines);
-                allDescriptors.add(descriptor);
-            }
-        }
+        // Lendo todos os descritores do arquivo
+        List<float[]> allDescriptors = readDescriptors(descriptorFile);
 
-        // Calculando a quantidade de descritores a serem amostrados
+        // Calculando a quantidade de descritores a serem amostrados, sobre os quadros que eles representam
         int totalDescriptors = allDescriptors.size();
-        int sampleSize = (int) (totalDescriptors * samplingPercentage / 100.0);
+        int[] weights = FrameIndexFile.readWeights(descriptorFile);
+        long totalFrames = weights == null ? totalDescriptors : Arrays.stream(weights).asLongStream().sum();
+        int sampleSize = (int) Math.min(totalDescriptors, totalFrames * samplingPercentage / 100.0);
         if (sampleSize == 0 && !allDescriptors.isEmpty()) {
             sampleSize = 1;  // Garante que pelo menos um elemento seja selecionado
         }
@@ -205,37 +277,16 @@ public class HOGExtractor {
 
 
     public List<float[]> sampleFramesBySecondHOG(File descriptorFile, double samplingPercentage) throws IOException {
-        List<float[]> allDescriptors = new ArrayList<>();
-
-        // Lendo todos os descritores do arquivo
-        try (BufferedReader reader = new BufferedReader(new FileReader(descriptorFile))) {
-            List<String> descriptorLines = new ArrayList<>();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isEmpty()) {
-                    if (!descriptorLines.isEmpty()) {
-                        float[] descriptor = parseDescriptor(descriptorLines);
-                        allDescriptors.add(descriptor);
-                        descriptorLines.clear();
-                    }
-                } else {
-                    descriptorLines.add(line);
-                }
-            }
-            if (!descriptorLines.isEmpty()) {
-                float[] descriptor = parseDescriptor(descriptorLines);
-                allDescriptors.add(descriptor);
-            }
-        }
-
         List<float[]> sampledDescriptors = new ArrayList<>();
         int framesPerSecond = 30; // Quantidade de quadros por segundo
         int sampleSize = (int) (framesPerSecond * (samplingPercentage / 100.0));
 
-        for (int i = 0; i < allDescriptors.size(); i += framesPerSecond) {
-            int end = Math.min(i + sampleSize, allDescriptors.size());
-            for (int j = i; j < end; j++) {
-                sampledDescriptors.add(allDescriptors.get(j));
+        // Os primeiros sampleSize quadros de cada segundo do vídeo, pelo índice do quadro; só eles são copiados do arquivo
+        try (DescriptorReader reader = DescriptorReader.open(descriptorFile)) {
+            while (reader.next()) {
+                if (reader.frameIndex() % framesPerSecond < sampleSize) {
+                    sampledDescriptors.add(reader.copyFloats());
+                }
             }
         }
 
@@ -0,0 +1,250 @@
+package com.projeto.tcc.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Índice sobre as médias dos grupos do agrupamento HOG. As médias são projetadas numa base ortonormal de
+poucas dimensões; de cada vetor guardam-se as coordenadas na base e a norma do resíduo fora dela. Como a
+distância euclidiana se decompõe na parte dentro e fora da base, a distância d entre um descritor e uma
+média fica entre sqrt(|cq - cg|² + (rq - rg)²) e sqrt(|cq - cg|² + (rq + rg)²), calculados em O(dimensões).
+Um grupo só é comparado de fato quando esse intervalo alcança alguma distância que a regra de similaridade
+aceita; os grupos continuam sendo percorridos na ordem de criação e a comparação final é a mesma, então o
+grupo escolhido é sempre o da busca linear.
+
+A base é escolhida entre as médias dos grupos (a de maior resíduo a cada passo, como num QR com pivotamento)
+e refeita a cada vez que a quantidade de grupos dobra; as projeções das médias são refeitas sob demanda.
+
+A regra (HOGExtractor.distanciaEuclidiana) usa s = 1 / (1 + e^d), multiplicado por 10 quando s < 0.1
+(d > ln 9), e aceita quando o resultado é menor que o limiar T. Isso vale para d em (ln(1/T - 1), ln 9]
+e para d > ln(10/T - 1); grupos mais próximos que ln(1/T - 1) não são aceitos.
+
+Os limites do intervalo são alargados pelo erro de arredondamento das duas contas. VectorMath.squaredDistance
+arredonda cada diferença para float (erro relativo 2^-24, 2^-23 no quadrado) e soma em double (no máximo
+n·2^-53 relativo para n dimensões). As projeções são feitas em double sobre vetores deslocados pela origem,
+com erro absoluto no quadrado da distância proporcional a n·2^-53·(|q - o|² + |g - o|²).
+ */
+public class HogGroupIndex {
+
+    private static final double LN9 = Math.log(9);
+    // Erro relativo do quadrado da diferença arredondada para float em VectorMath.squaredDistance
+    private static final double FLOAT_DIFFERENCE_ERROR = 0x1p-23;
+    private static final double DOUBLE_EPSILON = 0x1p-53;
+    // Folga absoluta em d para o arredondamento da sigmoide e dos limites (e^d, 1 / T - 1), muito acima de alguns ulps
+    private static final double THRESHOLD_MARGIN = 1e-9;
+    // Médias consideradas na escolha da base
+    private static final int MAX_CANDIDATES = 1024;
+
+    private final int maxDimensions;
+    // Os primeiros grupos são comparados direto: até lá, projetar o descritor custaria mais que as comparações
+    private final int directGroups;
+    private int nextRebuild;
+    private double[] origin;
+    private final List<double[]> basis = new ArrayList<>();
+    private double[] work;
+
+    // Médias dos grupos (as mesmas instâncias, atualizadas pelo grupo) e suas projeções
+    private final List<float[]> averages = new ArrayList<>();
+    private double[] coordinates = new double[0];
+    private double[] residuals = new double[0];
+    // |média - origem|², usado no erro das projeções
+    private double[] squaredNorms = new double[0];
+    private boolean[] stale = new boolean[0];
+
+    // Projeção do descritor consultado por último
+    private float[] query;
+    private final double[] queryCoordinates;
+    private double queryResidual;
+    private double querySquaredNorm;
+
+    // Distâncias aceitas: (nearFrom, ln 9] e (farFrom, infinito)
+    private final double nearFrom;
+    private final double farFrom;
+
+    public HogGroupIndex(int dimensions, double threshold) {
+        this.maxDimensions = Math.max(0, dimensions);
+        this.directGroups = 2 * maxDimensions;
+        this.nextRebuild = directGroups + 1;
+        this.queryCoordinates = new double[maxDimensions];
+        if (threshold <= 0.1) {
+            nearFrom = Double.POSITIVE_INFINITY;
+        } else if (threshold > 0.5) {
+            nearFrom = Double.NEGATIVE_INFINITY;
+        } else {
+            nearFrom = Math.log(1 / threshold - 1);
+        }
+        if (threshold <= 0) {
+            farFrom = Double.POSITIVE_INFINITY;
+        } else if (threshold >= 1) {
+            farFrom = LN9;
+        } else {
+            farFrom = Math.max(LN9, Math.log(10 / threshold - 1));
+        }
+    }
+
+    // false quando a média do grupo certamente está a uma distância do descritor que a regra não aceita
+    public boolean mayAccept(int group, float[] descriptor) {
+        if (maxDimensions == 0 || group < directGroups) {
+            return true;
+        }
+        if (descriptor != query) {
+            query = descriptor;
+            queryResidual = project(descriptor, queryCoordinates, 0);
+            querySquaredNorm = squaredNorm(queryCoordinates, 0, queryResidual);
+        }
+        int base = group * maxDimensions;
+        if (stale[group]) {
+            residuals[group] = project(averages.get(group), coordinates, base);
+            squaredNorms[group] = squaredNorm(coordinates, base, residuals[group]);
+            stale[group] = false;
+        }
+        double inside = 0;
+        for (int j = 0; j < basis.size(); j++) {
+            double difference = queryCoordinates[j] - coordinates[base + j];
+            inside += difference * difference;
+        }
+        double lowerResidual = queryResidual - residuals[group];
+        double upperResidual = queryResidual + residuals[group];
+        // Limites do quadrado da distância que squaredDistance pode devolver, com os erros das duas contas
+        int dimension = work.length;
+        double projectionError = 4 * (dimension + basis.size() + 4) * DOUBLE_EPSILON * (querySquaredNorm + squaredNorms[group]);
+        double distanceError = FLOAT_DIFFERENCE_ERROR + (dimension + 2) * DOUBLE_EPSILON;
+        double lowerSquared = (inside + lowerResidual * lowerResidual - projectionError) * (1 - distanceError);
+        double upperSquared = (inside + upperResidual * upperResidual + projectionError) * (1 + distanceError);
+        double lower = Math.sqrt(Math.max(0, lowerSquared)) - THRESHOLD_MARGIN;
+        double upper = Math.sqrt(upperSquared) + THRESHOLD_MARGIN;
+        if (Double.isNaN(lower) || Double.isNaN(upper)) {
+            return true;
+        }
+        boolean near = upper > nearFrom && lower <= LN9;
+        boolean far = upper > farFrom;
+        return near || far;
+    }
+
+    // Novo grupo com a média informada
+    public void add(float[] average) {
+        averages.add(average);
+        int group = averages.size() - 1;
+        if (group >= stale.length) {
+            int capacity = Math.max(16, 2 * stale.length);
+            coordinates = Arrays.copyOf(coordinates, capacity * maxDimensions);
+            residuals = Arrays.copyOf(residuals, capacity);
+            squaredNorms = Arrays.copyOf(squaredNorms, capacity);
+            stale = Arrays.copyOf(stale, capacity);
+        }
+        stale[group] = true;
+        if (maxDimensions > 0 && averages.size() >= nextRebuild) {
+            rebuildBasis();
+            nextRebuild = 2 * averages.size();
+        }
+    }
+
+    // A média do grupo mudou
+    public void update(int group) {
+        stale[group] = true;
+    }
+
+    /*
+    Origem na média das candidatas; a cada passo entra na base a direção da candidata com maior resíduo.
+    Os resíduos são mantidos só como normas: a nova direção é ortogonal às anteriores, então basta
+    descontar o quadrado da nova coordenada.
+     */
+    private void rebuildBasis() {
+        int step = Math.max(1, averages.size() / MAX_CANDIDATES);
+        List<float[]> candidates = new ArrayList<>();
+        for (int i = 0; i < averages.size(); i += step) {
+            candidates.add(averages.get(i));
+        }
+        int dimension = candidates.get(0).length;
+        origin = new double[dimension];
+        work = new double[dimension];
+        for (float[] candidate : candidates) {
+            for (int i = 0; i < dimension; i++) {
+                origin[i] += candidate[i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            origin[i] /= candidates.size();
+        }
+        basis.clear();
+        double[] remaining = new double[candidates.size()];
+        double largest = 0;
+        for (int c = 0; c < candidates.size(); c++) {
+            remaining[c] = project(candidates.get(c), new double[0], 0);
+            remaining[c] *= remaining[c];
+            largest = Math.max(largest, remaining[c]);
+        }
+        while (basis.size() < maxDimensions) {
+            int chosen = 0;
+            for (int c = 1; c < candidates.size(); c++) {
+                if (remaining[c] > remaining[chosen]) {
+                    chosen = c;
+                }
+            }
+            if (!(remaining[chosen] > 1e-12 * largest)) {
+                break;
+            }
+            // Resíduo da candidata, ortogonalizado de novo para manter a base ortonormal
+            project(candidates.get(chosen), new double[maxDimensions], 0);
+            double[] direction = work.clone();
+            for (double[] vector : basis) {
+                double dot = dot(vector, direction);
+                for (int i = 0; i < dimension; i++) {
+                    direction[i] -= dot * vector[i];
+                }
+            }
+            double norm = Math.sqrt(dot(direction, direction));
+            if (!(norm > 0)) {
+                break;
+            }
+            for (int i = 0; i < dimension; i++) {
+                direction[i] /= norm;
+            }
+            basis.add(direction);
+            for (int c = 0; c < candidates.size(); c++) {
+                float[] candidate = candidates.get(c);
+                double coordinate = 0;
+                for (int i = 0; i < dimension; i++) {
+                    coordinate += direction[i] * (candidate[i] - origin[i]);
+                }
+                remaining[c] -= coordinate * coordinate;
+            }
+            remaining[chosen] = 0;
+        }
+        Arrays.fill(stale, 0, averages.size(), true);
+        query = null;
+    }
+
+    // Coordenadas do vetor na base em target[offset..]; devolve a norma do resíduo, que fica em work
+    private double project(float[] vector, double[] target, int offset) {
+        for (int i = 0; i < work.length; i++) {
+            work[i] = vector[i] - origin[i];
+        }
+        for (int j = 0; j < basis.size(); j++) {
+            double[] direction = basis.get(j);
+            double coordinate = dot(direction, work);
+            target[offset + j] = coordinate;
+            for (int i = 0; i < work.length; i++) {
+                work[i] -= coordinate * direction[i];
+            }
+        }
+        return Math.sqrt(dot(work, work));
+    }
+
+    private double squaredNorm(double[] vectorCoordinates, int offset, double residual) {
+        double sum = residual * residual;
+        for (int j = 0; j < basis.size(); j++) {
+            sum += vectorCoordinates[offset + j] * vectorCoordinates[offset + j];
+        }
+        return sum;
+    }
+
+    private static double dot(double[] vector1, double[] vector2) {
+        double sum = 0;
+        for (int i = 0; i < vector1.length; i++) {
+            sum += vector1[i] * vector2[i];
+        }
+        return sum;
+    }
+}
@@ -24,6 +24,9 @@ public class MenuService {
     @Autowired
     private PointsFileGenerator pointsFileGenerator;
 
+    @Autowired
+    private CnnBackboneBenchmark cnnBackboneBenchmark;
+
     public void startMenu() throws IOException {
         Scanner scanner = new Scanner(System.in);
         double similarityThreshold = 0;
@@ -39,7 +42,9 @@ public class MenuService {
             System.out.println("6 - Gerar frames das amostras");
             System.out.println("7 - Amostra aleatoria");
             System.out.println("8 - Amostra por segundo");
-            System.out.println("9 - Sair");
+            System.out.println("9 - Extrair caracteristicas direto de um vídeo (sem gravar PNG)");
+            System.out.println("10 - Comparar redes CNN com a VGG16 (quadros/s e agrupamento)");
+            System.out.println("11 - Sair");
             System.out.print("Opção: ");
             int option = scanner.nextInt();
             scanner.nextLine(); // Consume newline left-over
@@ -58,8 +63,12 @@ public class MenuService {
                 case 2:
                     System.out.print("Insira o caminho do arquivo de vídeo de entrada: ");
                     String videoPath = scanner.nextLine();
+                    System.out.print("Quantidade de segmentos decodificados em paralelo (1 = sequencial): ");
+                    int segments = scanner.nextInt();
+                    scanner.nextLine();
+                    DecodeMode decodeMode = chooseDecodeMode(scanner);
                     try {
-                        frameExtractor.samplingFrames(videoPath);
+                        frameExtractor.samplingFrames(videoPath, segments, decodeMode);
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
@@ -104,7 +113,7 @@ public class MenuService {
                         scanner.nextLine();
                         if (dirChoice > 0 && dirChoice <= extractionSubdirsPoints.length) {
                             File chosenDescriptorSubdir = extractionSubdirsPoints[dirChoice - 1];
-                            String[] possibleDescriptorFiles = {"descritoresHOG.txt", "descritoresORB.txt", "descritoresCNN.txt"};
+                            String[] possibleDescriptorFiles = {"descritoresHOG.bin", "descritoresHOG.txt", "descritoresORB.bin", "descritoresORB.txt", "descritoresCNN.bin", "descritoresCNN.txt"};
                             boolean fileFound = false;
                             for (String descFileName : possibleDescriptorFiles) {
                                 File descriptorFile = new File(chosenDescriptorSubdir, descFileName);
@@ -160,7 +169,7 @@ public class MenuService {
                         scanner.nextLine();
                         if (dirChoice > 0 && dirChoice <= extractionSubdirs.length) {
                             File chosenDescriptorSubdir = extractionSubdirs[dirChoice - 1];
-                            String[] possibleDescriptorFiles = {"descritoresHOG.txt", "descritoresORB.txt", "descritoresCNN.txt"};
+                            String[] possibleDescriptorFiles = {"descritoresHOG.bin", "descritoresHOG.txt", "descritoresORB.bin", "descritoresORB.txt", "descritoresCNN.bin", "descritoresCNN.txt"};
                             boolean fileFound = false;
                             for (String descFileName : possibleDescriptorFiles) {
                                 File descriptorFile = new File(chosenDescriptorSubdir, descFileName);
@@ -220,7 +229,7 @@ public class MenuService {
                         scanner.nextLine();
                         if (dirChoice > 0 && dirChoice <= extractionSubdirs2.length) {
                             File chosenDescriptorSubdir = extractionSubdirs2[dirChoice - 1];
-                            String[] possibleDescriptorFiles = {"descritoresHOG.txt", "descritoresORB.txt", "descritoresCNN.txt"};
+                            String[] possibleDescriptorFiles = {"descritoresHOG.bin", "descritoresHOG.txt", "descritoresORB.bin", "descritoresORB.txt", "descritoresCNN.bin", "descritoresCNN.txt"};
                             boolean fileFound = false;
                             for (String descFileName : possibleDescriptorFiles) {
                                 File descriptorFile = new File(chosenDescriptorSubdir, descFileName);
@@ -263,7 +272,7 @@ public class MenuService {
                         scanner.nextLine();
                         if (dirChoice > 0 && dirChoice <= extractionSubdirs3.length) {
                             File chosenDescriptorSubdir = extractionSubdirs3[dirChoice - 1];
-                            String[] possibleDescriptorFiles = {"descritoresHOG.txt", "descritoresORB.txt", "descritoresCNN.txt"};
+                            String[] possibleDescriptorFiles = {"descritoresHOG.bin", "descritoresHOG.txt", "descritoresORB.bin", "descritoresORB.txt", "descritoresCNN.bin", "descritoresCNN.txt"};
                             boolean fileFound = false;
                             for (String descFileName : possibleDescriptorFiles) {
                                 File descriptorFile = new File(chosenDescriptorSubdir, descFileName);
@@ -289,6 +298,49 @@ public class MenuService {
                     }
                     break;
                 case 9:
+                    System.out.print("Insira o caminho do arquivo de vídeo de entrada: ");
+                    String streamingVideoPath = scanner.nextLine();
+                    System.out.print("Gravar também os quadros em disco? (s/n): ");
+                    boolean saveFrames = scanner.nextLine().trim().equalsIgnoreCase("s");
+                    DecodeMode streamingDecodeMode = chooseDecodeMode(scanner);
+                    try {
+                        frameExtractor.extractFeaturesFromVideo(streamingVideoPath, saveFrames, streamingDecodeMode);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                    break;
+                case 10:
+                    File benchmarkFramesDir = new File("D:\\UFU\\tcc_video_frames\\frames");
+                    File[] benchmarkSubdirs = benchmarkFramesDir.listFiles(File::isDirectory);
+                    if (benchmarkSubdirs == null || benchmarkSubdirs.length == 0) {
+                        System.out.println("Nenhum conjunto de frames encontrado.");
+                        break;
+                    }
+                    for (int i = 0; i < benchmarkSubdirs.length; i++) {
+                        System.out.println((i + 1) + " - " + benchmarkSubdirs[i].getName());
+                    }
+                    System.out.print("Escolha o conjunto de frames: ");
+                    int benchmarkChoice = scanner.nextInt();
+                    System.out.print("Quantidade máxima de quadros avaliados: ");
+                    int benchmarkFrames = scanner.nextInt();
+                    // O agrupamento comparado entre as redes usa a taxa de similaridade; a porcentagem de amostra não é usada
+                    double benchmarkThreshold = similarityThreshold;
+                    if (benchmarkThreshold == 0) {
+                        System.out.print("Insira a taxa de similaridade do agrupamento (0 a 100): ");
+                        benchmarkThreshold = scanner.nextDouble() / 100;
+                    }
+                    scanner.nextLine();
+                    if (benchmarkChoice > 0 && benchmarkChoice <= benchmarkSubdirs.length) {
+                        try {
+                            cnnBackboneBenchmark.run(benchmarkSubdirs[benchmarkChoice - 1].getAbsolutePath(), benchmarkThreshold, benchmarkFrames);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    } else {
+                        System.out.println("Escolha inválida.");
+                    }
+                    break;
+                case 11:
                     System.out.println("Saindo...");
                     return;
                 default:
@@ -297,4 +349,22 @@ public class MenuService {
             }
         }
     }
+
+    private DecodeMode chooseDecodeMode(Scanner scanner) {
+        System.out.println("Modo de decodificação:");
+        System.out.println("1 - Todos os quadros");
+        System.out.println("2 - Descartar quadros que não são referência (B-frames)");
+        System.out.println("3 - Somente quadros-chave (I-frames)");
+        System.out.print("Escolha uma opção: ");
+        int option = scanner.nextInt();
+        scanner.nextLine();
+        switch (option) {
+            case 2:
+                return DecodeMode.SKIP_NON_REFERENCE;
+            case 3:
+                return DecodeMode.KEY_FRAMES_ONLY;
+            default:
+                return DecodeMode.FULL;
+        }
+    }
 }
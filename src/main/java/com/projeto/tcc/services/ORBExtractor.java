@@ -11,46 +11,142 @@ import org.bytedeco.opencv.opencv_core.DMatchVector;
 import org.bytedeco.opencv.opencv_features2d.ORB;
 import org.bytedeco.opencv.opencv_features2d.DescriptorMatcher;
 import org.bytedeco.opencv.opencv_core.DMatch;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PreDestroy;
 import static org.bytedeco.opencv.global.opencv_imgproc.*;
 import static org.bytedeco.opencv.global.opencv_core.*;
 import org.bytedeco.javacpp.indexer.FloatIndexer;
 
 import java.io.*;
-import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 @Service
 @Slf4j
 public class ORBExtractor {
 
+    // Bytes de cada descritor ORB (256 bits por keypoint)
+    public static final int DESCRIPTOR_BYTES = 32;
 
-    private final ORB orb;
+    /*
+    O ORB do OpenCV guarda estado durante detectAndCompute e não deve ser compartilhado entre threads.
+    Cada thread que extrai um lote pega um OrbWorker livre, com seu próprio ORB e os buffers nativos
+    (keypoints, máscara e descritores) reaproveitados entre quadros, e o devolve ao terminar.
+    Os descritores saem copiados para byte[], então nenhum Mat nativo sobrevive à extração.
+     */
+    private final Deque<OrbWorker> idleWorkers = new ConcurrentLinkedDeque<>();
+    private final Set<OrbWorker> allWorkers = ConcurrentHashMap.newKeySet();
+    // Parâmetros do ORB, parte da chave do cache de descritores
+    private final String cacheConfiguration;
+
+    @Autowired
+    private DescriptorCache descriptorCache;
 
     public ORBExtractor() {
         // Inicializa o ORB com 1000 keypoints
-        orb = ORB.create();
-        orb.setMaxFeatures(1000);
+        OrbWorker worker = new OrbWorker();
+        ORB orb = worker.orb;
+        cacheConfiguration = "ORB;maximo=" + orb.getMaxFeatures() + ";escala=" + orb.getScaleFactor()
+                + ";niveis=" + orb.getNLevels() + ";borda=" + orb.getEdgeThreshold() + ";fast=" + orb.getFastThreshold()
+                + ";patch=" + orb.getPatchSize();
+        allWorkers.add(worker);
+        idleWorkers.push(worker);
     }
 
     public Mat orbFeaturesExtractor(Mat image) {
-        KeyPointVector keypoints = new KeyPointVector();
-        Mat descriptors = new Mat();
-        orb.detectAndCompute(image, new Mat(), keypoints, descriptors);
-        if (descriptors.type() != opencv_core.CV_8U) {
-            throw new IllegalArgumentException("Os descritores não são do tipo CV_8U.");
-        }
-        return descriptors;
+        return orbExtract(image).toMat();
     }
+
     public List<Mat> orbFeaturesExtractorBatch(List<Mat> frames) {
         List<Mat> descriptorsList = new ArrayList<>();
-        for (Mat frame : frames) {
-            descriptorsList.add(orbFeaturesExtractor(frame));
+        for (OrbDescriptors descriptors : orbExtractBatch(frames)) {
+            descriptorsList.add(descriptors.toMat());
         }
         return descriptorsList;
     }
 
+    public OrbDescriptors orbExtract(Mat image) {
+        OrbWorker worker = borrowWorker();
+        try {
+            return computeCached(worker, image);
+        } finally {
+            idleWorkers.push(worker);
+        }
+    }
+
+    public List<OrbDescriptors> orbExtractBatch(List<Mat> frames) {
+        List<OrbDescriptors> descriptorsList = new ArrayList<>(frames.size());
+        OrbWorker worker = borrowWorker();
+        try {
+            for (Mat frame : frames) {
+                descriptorsList.add(computeCached(worker, frame));
+            }
+        } finally {
+            idleWorkers.push(worker);
+        }
+        return descriptorsList;
+    }
+
+    // Consulta o cache pelo conteúdo do quadro antes de calcular, e guarda o que for calculado
+    private OrbDescriptors computeCached(OrbWorker worker, Mat image) {
+        DescriptorCache.Key key = descriptorCache.key(image, cacheConfiguration);
+        OrbDescriptors cached = descriptorCache.getOrb(key);
+        if (cached != null) {
+            return cached;
+        }
+        OrbDescriptors descriptors = worker.compute(image);
+        descriptorCache.putOrb(key, descriptors);
+        return descriptors;
+    }
+
+    private OrbWorker borrowWorker() {
+        OrbWorker worker = idleWorkers.poll();
+        if (worker == null) {
+            worker = new OrbWorker();
+            allWorkers.add(worker);
+        }
+        return worker;
+    }
+
+    @PreDestroy
+    public void release() {
+        for (OrbWorker worker : allWorkers) {
+            worker.close();
+        }
+        allWorkers.clear();
+        idleWorkers.clear();
+    }
+
+    private static final class OrbWorker {
+        private final ORB orb = ORB.create();
+        private final KeyPointVector keypoints = new KeyPointVector();
+        private final Mat mask = new Mat();
+        private final Mat descriptors = new Mat();
+
+        OrbWorker() {
+            orb.setMaxFeatures(1000);
+        }
+
+        OrbDescriptors compute(Mat image) {
+            orb.detectAndCompute(image, mask, keypoints, descriptors);
+            if (descriptors.type() != opencv_core.CV_8U) {
+                throw new IllegalArgumentException("Os descritores não são do tipo CV_8U.");
+            }
+            return OrbDescriptors.fromMat(descriptors);
+        }
+
+        void close() {
+            descriptors.release();
+            descriptors.close();
+            mask.close();
+            keypoints.close();
+            orb.close();
+        }
+    }
+
     /*
     public static double compareFeatures(Mat descriptors1, Mat descriptors2) {
         DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.BRUTEFORCE_HAMMING);
@@ -95,21 +191,38 @@ public class ORBExtractor {
     }
 
     public static double compareFeatures(Mat descriptors1, Mat descriptors2) {
-        DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.BRUTEFORCE_HAMMING);
-        DMatchVector matches = new DMatchVector();
+        return compareFeatures(OrbDescriptors.fromMat(descriptors1), OrbDescriptors.fromMat(descriptors2));
+    }
+
+    /*
+    Mesmo resultado do BFMatcher com distância de Hamming: cada keypoint de descriptors1 é associado ao
+    keypoint mais próximo de descriptors2, e a média usa os primeiros 50 matches (na ordem dos keypoints de
+    descriptors1), então só esses são procurados. Sem keypoints em algum dos lados não há matches e o
+    resultado é NaN, como antes.
+     */
+    public static double compareFeatures(OrbDescriptors descriptors1, OrbDescriptors descriptors2) {
         int maxMatches = 50;
-        matcher.match(descriptors1, descriptors2, matches);
+        int count = descriptors2.getRows() == 0 ? 0 : Math.min(maxMatches, descriptors1.getRows());
+        if (count > 0 && descriptors1.getCols() != descriptors2.getCols()) {
+            throw new IllegalArgumentException("Descritores ORB com " + descriptors1.getCols() + " e " + descriptors2.getCols() + " bytes por keypoint.");
+        }
+        long[] bits1 = descriptors1.getPackedBits();
+        long[] bits2 = descriptors2.getPackedBits();
+        int words = descriptors1.getWordsPerRow();
 
         // Calcular a média das distâncias de Hamming dos melhores matches
         double distanciaHammingMedia = 0;
-        int count = (int) Math.min(maxMatches, matches.size());
         for (int i = 0; i < count; i++) {
-            distanciaHammingMedia += matches.get(i).distance();
+            int best = Integer.MAX_VALUE;
+            for (int j = 0; j < descriptors2.getRows(); j++) {
+                best = Math.min(best, VectorMath.hamming(bits1, i * words, bits2, j * words, words));
+            }
+            distanciaHammingMedia += best;
         }
         distanciaHammingMedia /= count;
 
         // Normalizar a distância média para o intervalo [0, 1]
-        double maxDistancia = descriptors1.cols() * 8; // Número máximo de bits diferentes
+        double maxDistancia = descriptors1.getCols() * 8; // Número máximo de bits diferentes
         double distanciaNormalizada = distanciaHammingMedia / maxDistancia;
 
         // Converter a distância normalizada em uma medida de similaridade
@@ -119,22 +232,15 @@ public class ORBExtractor {
     }
 
 
-    public static Mat stringToMat(String str) {
-        String[] parts = str.split("\n", 2);
-        String[] header = parts[0].split(": ");
-        int rows = Integer.parseInt(header[0].trim());
-        int cols = Integer.parseInt(header[1].trim());
-        int type = Integer.parseInt(header[2].trim());
-        Mat mat = new Mat(rows, cols, type);
-        ByteBuffer buffer = mat.createBuffer();
-        String[] byteStrings = parts[1].trim().split(" ");
-        for (String byteString : byteStrings) {
-            if (!byteString.isEmpty()) {
-                byte b = (byte) Integer.parseInt(byteString, 16);
-                buffer.put(b);
+    // Todos os descritores do arquivo (texto ou binário), na ordem dos quadros
+    public static List<Mat> readDescriptors(File descriptorFile) throws IOException {
+        try (DescriptorReader reader = DescriptorReader.open(descriptorFile)) {
+            List<Mat> descriptors = new ArrayList<>();
+            while (reader.next()) {
+                descriptors.add(reader.toMat());
             }
+            return descriptors;
         }
-        return mat;
     }
 
     public static Mat calculateAverageMat(List<Mat> mats) {
@@ -176,94 +282,142 @@ public class ORBExtractor {
     public List<Mat> groupFramesORB(File descriptorFile, double similarityThreshold, double samplingPercentage) throws IOException {
         List<ORBGroup> groups = new ArrayList<>();
         List<Mat> selectedDescriptors = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(descriptorFile))) {
-            List<String> descriptorLines = new ArrayList<>();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isEmpty()) {
-                    if (!descriptorLines.isEmpty()) {
-                        Mat descriptor = stringToMat(String.join("\n", descriptorLines));
-                        descriptorLines.clear();
-                        addToORBGroup(groups, descriptor, similarityThreshold);
-                    }
-                } else {
-                    descriptorLines.add(line);
-                }
-            }
-            // Process the last descriptor
-            if (!descriptorLines.isEmpty()) {
-                Mat descriptor = stringToMat(String.join("\n", descriptorLines));
-                addToORBGroup(groups, descriptor, similarityThreshold);
+        // Quantos quadros cada descritor representa (quadros quase duplicados descartados na decodificação)
+        int[] weights = FrameIndexFile.readWeights(descriptorFile);
+        int totalDescriptors = 0;
+        long totalFrames = 0;
+
+        try (DescriptorReader reader = DescriptorReader.open(descriptorFile)) {
+            while (reader.next()) {
+                int weight = FrameIndexFile.weightAt(weights, reader.position());
+                addToORBGroup(groups, reader.toOrbDescriptors(), weight, similarityThreshold);
+                totalDescriptors++;
+                totalFrames += weight;
             }
         }
 
         // Create samples from groups
         for (ORBGroup group : groups) {
-            Mat selectedDescriptor = group.selectRepresentative();
+            OrbDescriptors selectedDescriptor = group.selectRepresentative();
             if (selectedDescriptor != null) {
-                selectedDescriptors.add(selectedDescriptor);
+                selectedDescriptors.add(selectedDescriptor.toMat());
             }
             log.info("Quadro adicionado a amostra!!");
         }
 
         // Sample the selected descriptors
-        int elementsToSample = (int) (selectedDescriptors.size() * (samplingPercentage / 100.0));
+        // A porcentagem é aplicada sobre os quadros representados (cada descritor pode valer vários quadros),
+        // limitada aos representantes existentes; sem quadros descartados é a porcentagem dos representantes
+        double framesPerDescriptor = totalDescriptors == 0 ? 1 : totalFrames / (double) totalDescriptors;
+        int elementsToSample = (int) Math.min(selectedDescriptors.size(), selectedDescriptors.size() * framesPerDescriptor * (samplingPercentage / 100.0));
         if (elementsToSample == 0 && !selectedDescriptors.isEmpty()) {
             elementsToSample = 1; // Garante que pelo menos um elemento seja selecionado
         }
         return selectedDescriptors.subList(0, elementsToSample);
     }
 
-    private void addToORBGroup(List<ORBGroup> groups, Mat descriptor, double similarityThreshold) {
+    private void addToORBGroup(List<ORBGroup> groups, OrbDescriptors descriptor, int weight, double similarityThreshold) {
         for (ORBGroup group : groups) {
             if (group.isSimilar(descriptor, similarityThreshold)) {
-                group.add(descriptor);
+                group.add(descriptor, weight);
                 log.info("Quadro adicionado ao grupo");
                 return;
             }
         }
         log.info("Novo grupo criado");
-        groups.add(new ORBGroup(descriptor));
+        groups.add(new ORBGroup(descriptor, weight));
     }
 
+    /*
+    Grupo ORB com a contagem, para cada bit de cada keypoint, de quantos descritores do grupo têm o bit ligado.
+    Os keypoints são alinhados pela linha, com as linhas do primeiro descritor; cada linha conta também quantos
+    descritores a possuem. Cada descritor conta como os quadros que representa (peso em quadros.csv). O centróide
+    é o voto da maioria de cada bit (empate fica 0), e a inserção atualiza as contagens e o centróide só nas
+    linhas do descritor inserido, em O(bits do descritor).
+     */
     private static class ORBGroup {
-        private List<Mat> descriptors = new ArrayList<>();
-        private Mat average;
-
-        ORBGroup(Mat descriptor) {
-            add(descriptor);
+        private final List<OrbDescriptors> descriptors = new ArrayList<>();
+        private final int rows;
+        private final int cols;
+        private final int type;
+        private final int[] bitCounts;
+        private final int[] rowCounts;
+        private final byte[] centroidData;
+        private OrbDescriptors centroid;
+
+        ORBGroup(OrbDescriptors descriptor, int weight) {
+            rows = descriptor.getRows();
+            cols = descriptor.getCols();
+            type = descriptor.getType();
+            bitCounts = new int[rows * cols * 8];
+            rowCounts = new int[rows];
+            centroidData = new byte[rows * cols];
+            add(descriptor, weight);
         }
 
-        void add(Mat descriptor) {
+        void add(OrbDescriptors descriptor, int weight) {
+            int sharedRows = Math.min(rows, descriptor.getRows());
+            if (sharedRows > 0 && descriptor.getCols() != cols) {
+                throw new IllegalArgumentException("Descritor ORB com " + descriptor.getCols() + " bytes por keypoint, esperado " + cols + ".");
+            }
             descriptors.add(descriptor);
-            updateAverage();
+            byte[] data = descriptor.getData();
+            for (int row = 0; row < sharedRows; row++) {
+                rowCounts[row] += weight;
+                for (int col = row * cols; col < (row + 1) * cols; col++) {
+                    int majority = 0;
+                    for (int bit = 0; bit < 8; bit++) {
+                        int count = bitCounts[8 * col + bit] += weight * ((data[col] >> bit) & 1);
+                        if (2 * count > rowCounts[row]) {
+                            majority |= 1 << bit;
+                        }
+                    }
+                    centroidData[col] = (byte) majority;
+                }
+            }
+            // Cópia: o OrbDescriptors guarda os bits empacotados do centróide
+            centroid = new OrbDescriptors(rows, cols, type, centroidData.clone());
         }
 
-        boolean isSimilar(Mat descriptor, double similarityThreshold) {
-            if (average == null) {
-                return true;
-            }
-            double similarity = compareFeatures(average, descriptor);
+        boolean isSimilar(OrbDescriptors descriptor, double similarityThreshold) {
+            double similarity = compareFeatures(centroid, descriptor);
             log.info("Distancia: {}, similarityThreshold: {}", similarity, similarityThreshold);
             return similarity < similarityThreshold;
         }
 
-        Mat selectRepresentative() {
-            Mat selectedDescriptor = null;
-            double maxSimilarity = -1;
-            for (Mat descriptor : descriptors) {
-                double similarity = compareFeatures(average, descriptor);
-                if (similarity > maxSimilarity) {
-                    maxSimilarity = similarity;
+        /*
+        Descritor que mais concorda com o grupo: para cada bit das linhas que possui, soma quantos descritores
+        do grupo (pesados pelos quadros que representam) têm o mesmo valor, dividido pelo total de comparações
+        (o que equivale à menor distância de Hamming média aos demais, keypoint a keypoint).
+         */
+        OrbDescriptors selectRepresentative() {
+            OrbDescriptors selectedDescriptor = null;
+            double maxAgreement = -1;
+            for (OrbDescriptors descriptor : descriptors) {
+                double agreement = agreement(descriptor);
+                if (agreement > maxAgreement) {
+                    maxAgreement = agreement;
                     selectedDescriptor = descriptor;
                 }
             }
             return selectedDescriptor;
         }
 
-        private void updateAverage() {
-            average = calculateAverageMat(descriptors);
+        private double agreement(OrbDescriptors descriptor) {
+            int sharedRows = Math.min(rows, descriptor.getRows());
+            byte[] data = descriptor.getData();
+            long agreeing = 0;
+            long compared = 0;
+            for (int row = 0; row < sharedRows; row++) {
+                for (int col = row * cols; col < (row + 1) * cols; col++) {
+                    for (int bit = 0; bit < 8; bit++) {
+                        int count = bitCounts[8 * col + bit];
+                        agreeing += ((data[col] >> bit) & 1) != 0 ? count : rowCounts[row] - count;
+                    }
+                }
+                compared += (long) rowCounts[row] * cols * 8;
+            }
+            return compared == 0 ? 0 : agreeing / (double) compared;
         }
     }
 
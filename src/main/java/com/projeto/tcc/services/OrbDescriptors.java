@@ -0,0 +1,70 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+// Descritores ORB de um quadro fora da memória nativa: uma linha de "cols" bytes por keypoint
+public class OrbDescriptors {
+
+    private final int rows;
+    private final int cols;
+    private final int type;
+    private final byte[] data;
+    // Bits de cada linha em palavras de 64 bits, para a distância de Hamming (calculados no primeiro uso)
+    private long[] packedBits;
+
+    public OrbDescriptors(int rows, int cols, int type, byte[] data) {
+        this.rows = rows;
+        this.cols = cols;
+        this.type = type;
+        this.data = data;
+    }
+
+    // Copia os bytes do Mat; o Mat continua pertencendo a quem chamou
+    public static OrbDescriptors fromMat(Mat mat) {
+        byte[] data = new byte[(int) (mat.total() * mat.elemSize())];
+        if (data.length > 0) {
+            Mat continuous = mat.isContinuous() ? mat : mat.clone();
+            continuous.data().position(0).get(data);
+            if (continuous != mat) {
+                continuous.release();
+            }
+        }
+        return new OrbDescriptors(mat.rows(), mat.cols(), mat.type(), data);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getWordsPerRow() {
+        return (cols + 7) / 8;
+    }
+
+    public long[] getPackedBits() {
+        if (packedBits == null) {
+            packedBits = VectorMath.packBits(data, rows, cols);
+        }
+        return packedBits;
+    }
+
+    // Cria um Mat nativo com uma cópia dos bytes, para as rotinas do OpenCV
+    public Mat toMat() {
+        Mat mat = new Mat(rows, cols, type);
+        if (data.length > 0) {
+            mat.data().put(data);
+        }
+        return mat;
+    }
+}
@@ -0,0 +1,179 @@
+package com.projeto.tcc.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/*
+Estágio de gravação dos descritores extraídos em paralelo. Cada lote recebe um número de sequência ao ser
+agendado; a thread de extração entrega o lote pronto e segue para o próximo, sem esperar pela gravação.
+Uma única thread de gravação escreve os lotes estritamente na ordem da sequência, guardando num buffer de
+reordenação os que terminaram adiantados, e avisa quantos quadros já estão gravados (para o checkpoint).
+Um lote só é agendado quando há lugar na janela, o que limita o buffer e a memória dos resultados pendentes.
+ */
+public class OrderedDescriptorWriter implements Closeable {
+
+    // Descritores de um lote já calculados; writeTo roda na thread de gravação
+    public interface Batch {
+        void writeTo(DescriptorOutput output) throws IOException;
+    }
+
+    // Chamado na thread de gravação depois de cada lote, com o total de quadros gravados
+    public interface CommitListener {
+        void committed(int writtenFrames) throws IOException;
+    }
+
+    private static final class Pending {
+        private final int frames;
+        private final Batch batch;
+
+        Pending(int frames, Batch batch) {
+            this.frames = frames;
+            this.batch = batch;
+        }
+    }
+
+    private final DescriptorOutput output;
+    private final CommitListener listener;
+    private final int capacity;
+    private final Semaphore window;
+    private final Thread thread;
+
+    // Protegidos por this
+    private final Map<Long, Pending> reorderBuffer = new HashMap<>();
+    private long nextSequence;
+    private long nextToWrite;
+    private boolean finished;
+    private Throwable failure;
+
+    private int writtenFrames;
+
+    /*
+    firstFrame: quadros já gravados antes deste estágio (extração retomada); capacity: máximo de lotes
+    agendados e ainda não gravados.
+     */
+    public OrderedDescriptorWriter(DescriptorOutput output, int firstFrame, int capacity, CommitListener listener) {
+        this.output = output;
+        this.writtenFrames = firstFrame;
+        this.capacity = Math.max(1, capacity);
+        this.listener = listener;
+        this.window = new Semaphore(this.capacity);
+        this.thread = new Thread(this::writeLoop, "gravacao-descritores");
+        this.thread.start();
+    }
+
+    /*
+    Agenda a extração de um lote de "frames" quadros no executor. Bloqueia quem agenda (nunca as threads de
+    extração) enquanto a janela estiver cheia; falhas anteriores da gravação ou da extração são propagadas.
+     */
+    public void submit(ExecutorService executor, int frames, Callable<Batch> extraction) throws IOException, InterruptedException {
+        window.acquire();
+        long sequence;
+        synchronized (this) {
+            rethrowFailure();
+            sequence = nextSequence++;
+        }
+        try {
+            executor.submit(() -> {
+                try {
+                    Batch batch = extraction.call();
+                    synchronized (this) {
+                        // Depois de uma falha o buffer não recebe mais lotes, que nunca seriam gravados
+                        if (failure == null) {
+                            reorderBuffer.put(sequence, new Pending(frames, batch));
+                            notifyAll();
+                        }
+                    }
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // A sequência já foi reservada e nunca seria preenchida: devolve o lugar na janela e encerra a gravação
+            window.release();
+            fail(e);
+            throw e;
+        }
+    }
+
+    // Espera a gravação de todos os lotes agendados
+    public void finish() throws IOException, InterruptedException {
+        synchronized (this) {
+            finished = true;
+            notifyAll();
+        }
+        thread.join();
+        synchronized (this) {
+            rethrowFailure();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Pending next;
+                synchronized (this) {
+                    while (failure == null && !reorderBuffer.containsKey(nextToWrite) && !(finished && nextToWrite == nextSequence)) {
+                        wait();
+                    }
+                    if (failure != null || !reorderBuffer.containsKey(nextToWrite)) {
+                        return;
+                    }
+                    next = reorderBuffer.remove(nextToWrite);
+                }
+                next.batch.writeTo(output);
+                writtenFrames += next.frames;
+                listener.committed(writtenFrames);
+                synchronized (this) {
+                    nextToWrite++;
+                }
+                window.release();
+            }
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+        reorderBuffer.clear();
+        notifyAll();
+        // Libera quem estiver esperando lugar na janela, para que veja a falha
+        window.release(capacity);
+    }
+
+    private void rethrowFailure() throws IOException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new IOException("Falha na extração dos descritores.", failure);
+        }
+    }
+
+    // Interrompe a gravação se finish não chegou a ser chamado (saída por erro de quem agenda)
+    @Override
+    public void close() throws IOException {
+        if (thread.isAlive()) {
+            fail(new IOException("Gravação dos descritores interrompida."));
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -27,24 +27,41 @@ public class PointsFileGenerator {
     }
 
     public void saveAsPointsFileHOG(List<float[]> descriptors, String filePath) throws IOException {
-        saveAsPointsFile(descriptors, filePath, "HOG", this::getDimensionality, this::convertDescriptorsToStringLines);
+        saveAsPointsFileHOG(descriptors, null, filePath);
+    }
+
+    /*
+    frameIndices (opcional): índice do quadro de cada descritor, usado no rótulo do ponto ("P" + índice) para
+    que extractAndCopyFrames encontre o quadro mesmo quando a decodificação pulou quadros; sem ele o rótulo
+    é a posição do descritor.
+     */
+    public void saveAsPointsFileHOG(List<float[]> descriptors, int[] frameIndices, String filePath) throws IOException {
+        saveAsPointsFile(descriptors, frameIndices, filePath, "HOG", this::getDimensionality, this::convertDescriptorsToStringLines);
     }
 
     public void saveAsPointsFileORB(List<Mat> descriptors, String filePath) throws IOException {
+        saveAsPointsFileORB(descriptors, null, filePath);
+    }
+
+    public void saveAsPointsFileORB(List<Mat> descriptors, int[] frameIndices, String filePath) throws IOException {
         int maxDimensionality = descriptors.stream()
                 .mapToInt(Mat::cols)
                 .max()
                 .orElse(0);
 
         List<float[]> floatDescriptors = convertBinaryMatToFloatList(descriptors, maxDimensionality);
-        saveAsPointsFile(floatDescriptors, filePath, "ORB", d -> maxDimensionality, this::convertDescriptorsToStringLines);
+        saveAsPointsFile(floatDescriptors, frameIndices, filePath, "ORB", d -> maxDimensionality, this::convertDescriptorsToStringLines);
     }
 
     public void saveAsPointsFileCNN(List<INDArray> descriptors, String filePath) throws IOException {
-        saveAsPointsFile(descriptors, filePath, "CNN", this::getCnnDimensionality, this::convertCnnDescriptorsToStringLines);
+        saveAsPointsFileCNN(descriptors, null, filePath);
     }
 
-    private <T> void saveAsPointsFile(List<T> descriptors, String filePath, String extractorName, DimensionalityFunction<T> dimensionalityFunction, DescriptorsToStringLinesFunction<T> converter) throws IOException {
+    public void saveAsPointsFileCNN(List<INDArray> descriptors, int[] frameIndices, String filePath) throws IOException {
+        saveAsPointsFile(descriptors, frameIndices, filePath, "CNN", this::getCnnDimensionality, this::convertCnnDescriptorsToStringLines);
+    }
+
+    private <T> void saveAsPointsFile(List<T> descriptors, int[] frameIndices, String filePath, String extractorName, DimensionalityFunction<T> dimensionalityFunction, DescriptorsToStringLinesFunction<T> converter) throws IOException {
         log.info("salvando Points File");
         log.info("Caminho do arquivo: " + filePath);
         log.info("Descriptores: {}", descriptors.isEmpty());
@@ -76,7 +93,7 @@ public class PointsFileGenerator {
                 writer.write("D" + i + (i < dimensionality - 1 ? ";" : "\n"));
             }
             for (int i = 0; i < pointLines.size(); i++) {
-                writer.write("P" + i + ";" + pointLines.get(i) + "\n");
+                writer.write("P" + (frameIndices != null ? frameIndices[i] : i) + ";" + pointLines.get(i) + "\n");
             }
         } catch (IOException e) {
             log.error("Erro ao salvar o arquivo: " + e.getMessage(), e);
@@ -205,6 +222,10 @@ public class PointsFileGenerator {
         if (!resultDirectory.exists()) {
             resultDirectory.mkdirs();
         }
+        if (FrameStore.exists(new File(framesDirectoryPath))) {
+            copyFramesFromStore(new File(framesDirectoryPath), resultDirectory, matchedLines);
+            return;
+        }
         int contador = 0;
         log.info("Iniciando a cópia dos quadros correspondentes.");
         for (String line : matchedLines) {
@@ -230,4 +251,28 @@ public class PointsFileGenerator {
         log.info("Cópia dos quadros concluída.");
     }
 
+    /*
+    O número do ponto é o índice do quadro gravado no registro do descritor (pointsFileHoleSet), que é a chave
+    do quadro no manifesto; descritores pulados na decodificação não deslocam a numeração.
+     */
+    private void copyFramesFromStore(File framesDirectory, File resultDirectory, List<String> matchedLines) throws IOException {
+        log.info("Iniciando a cópia dos quadros correspondentes a partir do manifesto.");
+        try (FrameStore.Reader frameStore = FrameStore.openReader(framesDirectory)) {
+            String extension = frameStore.getCodec().getExtension();
+            int contador = 0;
+            for (String line : matchedLines) {
+                int frameIndex = Integer.parseInt(line.substring(1)); // Remove the "P" prefix
+                if (!frameStore.isPresent(frameIndex)) {
+                    log.warn("Quadro não encontrado no manifesto: " + frameIndex);
+                    contador++;
+                    continue;
+                }
+                String newNameFile = "quadro (" + frameIndex + ") (P" + contador + ")." + extension;
+                Files.write(new File(resultDirectory, newNameFile).toPath(), frameStore.readEncoded(frameIndex));
+                contador++;
+            }
+        }
+        log.info("Cópia dos quadros concluída.");
+    }
+
 }
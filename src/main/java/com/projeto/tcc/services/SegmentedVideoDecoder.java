@@ -0,0 +1,159 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+@Service
+@Slf4j
+public class SegmentedVideoDecoder {
+
+    // Recebe os quadros decodificados de cada segmento. É chamado concorrentemente pelas threads
+    // dos segmentos; o Mat só é válido durante a chamada e deve ser clonado se for retido.
+    @FunctionalInterface
+    public interface FrameConsumer {
+        void accept(DecodedFrame frame) throws Exception;
+    }
+
+    /*
+    Divide o vídeo em intervalos de quadros e decodifica cada intervalo com seu próprio grabber.
+    O início de cada intervalo é alinhado ao próximo quadro-chave, de forma que o seek seja exato,
+    e cada segmento entrega apenas os quadros com índice global dentro do seu intervalo, sem perdas
+    nem repetições. Com um DecodeMode que descarta quadros, cada segmento entrega apenas os quadros
+    decodificados, ainda com o índice e o timestamp reais. Retorna a quantidade total de quadros entregues.
+     */
+    public int decode(String videoPath, int segments, DecodeMode mode, FrameConsumer consumer) throws IOException, InterruptedException, ExecutionException {
+        VideoTiming timing = probeTiming(videoPath);
+        if (timing == null) {
+            return 0;
+        }
+        int lengthInFrames = timing.getLengthInFrames();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, segments));
+        try {
+            List<Integer> boundaries = alignBoundaries(videoPath, timing, lengthInFrames, segments, executor);
+            log.info("Limites dos segmentos alinhados aos quadros-chave: {}", boundaries);
+
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < boundaries.size(); i++) {
+                final int start = boundaries.get(i);
+                final int end = i + 1 < boundaries.size() ? boundaries.get(i + 1) : Integer.MAX_VALUE;
+                futures.add(executor.submit(() -> decodeSegment(videoPath, timing, start, end, mode, consumer)));
+            }
+
+            int decodedFrames = 0;
+            for (Future<Integer> future : futures) {
+                decodedFrames += future.get();
+            }
+            if (mode == DecodeMode.FULL && decodedFrames != lengthInFrames) {
+                log.warn("Quadros decodificados ({}) diferem do tamanho informado pelo contêiner ({})", decodedFrames, lengthInFrames);
+            }
+            return decodedFrames;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Taxa de quadros, timestamp do primeiro quadro e tamanho do vídeo; null se o vídeo não tiver quadros
+    public VideoTiming probeTiming(String videoPath) throws FFmpegFrameGrabber.Exception {
+        FFmpegFrameGrabber probe = new FFmpegFrameGrabber(videoPath);
+        probe.start();
+        try {
+            Frame first = probe.grabImage();
+            if (first == null) {
+                return null;
+            }
+            return new VideoTiming(probe.getFrameRate(), first.timestamp, probe.getLengthInFrames());
+        } finally {
+            probe.stop();
+            probe.release();
+        }
+    }
+
+    private List<Integer> alignBoundaries(String videoPath, VideoTiming timing, int lengthInFrames, int segments, ExecutorService executor) throws InterruptedException, ExecutionException {
+        List<Future<Integer>> keyFrames = new ArrayList<>();
+        for (int k = 1; k < segments; k++) {
+            final int nominalStart = (int) ((long) lengthInFrames * k / segments);
+            keyFrames.add(executor.submit(() -> nextKeyFrameIndex(videoPath, timing, nominalStart)));
+        }
+
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        for (Future<Integer> keyFrame : keyFrames) {
+            int index = keyFrame.get();
+            // Segmentos sem quadro-chave próprio são absorvidos pelo segmento anterior
+            if (index > boundaries.get(boundaries.size() - 1)) {
+                boundaries.add(index);
+            }
+        }
+        return boundaries;
+    }
+
+    private int nextKeyFrameIndex(String videoPath, VideoTiming timing, int frameIndex) throws FFmpegFrameGrabber.Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(videoPath);
+        grabber.start();
+        try {
+            grabber.setTimestamp(timing.toTimestamp(frameIndex));
+            Frame keyFrame = grabber.grabKeyFrame();
+            return keyFrame == null ? -1 : timing.toFrameIndex(keyFrame.timestamp);
+        } finally {
+            grabber.stop();
+            grabber.release();
+        }
+    }
+
+    private int decodeSegment(String videoPath, VideoTiming timing, int start, int end, DecodeMode mode, FrameConsumer consumer) throws Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(videoPath);
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        mode.apply(grabber);
+        grabber.start();
+        try {
+            Frame frame = seekToFrame(grabber, timing, start);
+            int decodedFrames = 0;
+            for (; frame != null; frame = grabber.grabImage()) {
+                int frameIndex = timing.toFrameIndex(frame.timestamp);
+                if (frameIndex < start) {
+                    continue;
+                }
+                if (frameIndex >= end) {
+                    break;
+                }
+                consumer.accept(new DecodedFrame(frameIndex, frame.timestamp, frame.keyFrame, converter.convert(frame)));
+                decodedFrames++;
+            }
+            log.info("Segmento [{}, {}) decodificado: {} quadros", start, end == Integer.MAX_VALUE ? "fim" : end, decodedFrames);
+            return decodedFrames;
+        } finally {
+            grabber.stop();
+            grabber.release();
+        }
+    }
+
+    // Posiciona o grabber em um quadro com índice menor ou igual ao pedido e retorna esse quadro.
+    // O seek do FFmpeg pode ultrapassar o alvo quando ele não é quadro-chave; nesse caso recua com margem crescente.
+    private Frame seekToFrame(FFmpegFrameGrabber grabber, VideoTiming timing, int frameIndex) throws FFmpegFrameGrabber.Exception {
+        if (frameIndex == 0) {
+            return grabber.grabImage();
+        }
+        long target = timing.toTimestamp(frameIndex);
+        long firstTimestamp = timing.toTimestamp(0);
+        long margin = 0;
+        while (true) {
+            long seekTimestamp = Math.max(firstTimestamp, target - margin);
+            grabber.setTimestamp(seekTimestamp);
+            Frame frame = grabber.grabImage();
+            if (frame == null || timing.toFrameIndex(frame.timestamp) <= frameIndex || seekTimestamp == firstTimestamp) {
+                return frame;
+            }
+            margin = margin == 0 ? 1_000_000L : margin * 2;
+            log.warn("Seek ultrapassou o quadro {}, recuando {} us", frameIndex, margin);
+        }
+    }
+}
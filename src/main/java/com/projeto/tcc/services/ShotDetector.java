@@ -0,0 +1,100 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bytedeco.opencv.global.opencv_core.absdiff;
+import static org.bytedeco.opencv.global.opencv_core.mean;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/*
+Detector de cortes barato aplicado na decodificação: cada quadro é reduzido para 64x36 em tons de cinza
+e comparado pela diferença absoluta média (0-255) com o quadro anterior e com o último quadro mantido.
+- diferença para o quadro anterior acima de cutThreshold inicia uma nova cena;
+- com dropDuplicates, quadros cuja diferença para o último mantido não passa de duplicateThreshold
+  são descartados e somados ao peso do último quadro mantido.
+Não é thread-safe: uma instância por laço de decodificação.
+ */
+public class ShotDetector implements Closeable {
+
+    private static final Size THUMBNAIL_SIZE = new Size(64, 36);
+
+    private final double cutThreshold;
+    private final boolean dropDuplicates;
+    private final double duplicateThreshold;
+    private final List<FrameIndexFile.Entry> keptFrames = new ArrayList<>();
+
+    private final Mat gray = new Mat();
+    private final Mat difference = new Mat();
+    private Mat previous = new Mat();
+    private Mat current = new Mat();
+    private Mat lastKept = new Mat();
+    private int shot = -1;
+    private int droppedFrames;
+
+    public ShotDetector(double cutThreshold, boolean dropDuplicates, double duplicateThreshold) {
+        this.cutThreshold = cutThreshold;
+        this.dropDuplicates = dropDuplicates;
+        this.duplicateThreshold = duplicateThreshold;
+    }
+
+    // Retorna true se o quadro deve seguir para os extratores
+    public boolean accept(DecodedFrame frame) {
+        Mat mat = frame.getMat();
+        if (mat.channels() == 1) {
+            resize(mat, current, THUMBNAIL_SIZE, 0, 0, INTER_AREA);
+        } else {
+            cvtColor(mat, gray, mat.channels() == 4 ? COLOR_BGRA2GRAY : COLOR_BGR2GRAY);
+            resize(gray, current, THUMBNAIL_SIZE, 0, 0, INTER_AREA);
+        }
+
+        boolean newShot = shot < 0 || meanAbsoluteDifference(current, previous) > cutThreshold;
+        if (newShot) {
+            shot++;
+        }
+        boolean keep = newShot || !dropDuplicates || meanAbsoluteDifference(current, lastKept) > duplicateThreshold;
+        if (keep) {
+            keptFrames.add(new FrameIndexFile.Entry(frame.getFrameIndex(), frame.getTimestamp(), shot, 1));
+            current.copyTo(lastKept);
+        } else {
+            keptFrames.get(keptFrames.size() - 1).addWeight(1);
+            droppedFrames++;
+        }
+
+        Mat swap = previous;
+        previous = current;
+        current = swap;
+        return keep;
+    }
+
+    // Quadros mantidos na ordem em que foram aceitos, com cena e peso
+    public List<FrameIndexFile.Entry> getKeptFrames() {
+        return keptFrames;
+    }
+
+    public int getShotCount() {
+        return shot + 1;
+    }
+
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private double meanAbsoluteDifference(Mat a, Mat b) {
+        absdiff(a, b, difference);
+        return mean(difference).get(0);
+    }
+
+    @Override
+    public void close() {
+        gray.release();
+        difference.release();
+        previous.release();
+        current.release();
+        lastKept.release();
+    }
+}
@@ -0,0 +1,57 @@
+package com.projeto.tcc.services;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+Núcleos de VectorMath com a Vector API. Os floats são carregados em vetores com metade da largura
+preferida e convertidos para double lane a lane, para somar em double como a versão escalar; só a ordem
+das somas muda. Carregada por reflexão em VectorMath, apenas com o módulo jdk.incubator.vector presente.
+ */
+final class VectorKernels implements VectorMath.Kernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    @Override
+    public double squaredDistance(float[] vector1, float[] vector2, int length) {
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector difference = FloatVector.fromArray(FLOATS, vector1, i).sub(FloatVector.fromArray(FLOATS, vector2, i));
+            DoubleVector wide = (DoubleVector) difference.castShape(DOUBLES, 0);
+            sum = wide.fma(wide, sum);
+        }
+        double result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double difference = vector1[i] - vector2[i];
+            result += difference * difference;
+        }
+        return result;
+    }
+
+    @Override
+    public double dot(float[] vector1, float[] vector2, int length) {
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            DoubleVector wide1 = (DoubleVector) FloatVector.fromArray(FLOATS, vector1, i).castShape(DOUBLES, 0);
+            DoubleVector wide2 = (DoubleVector) FloatVector.fromArray(FLOATS, vector2, i).castShape(DOUBLES, 0);
+            sum = wide1.fma(wide2, sum);
+        }
+        double result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += (double) vector1[i] * vector2[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return FLOATS.length() + " floats por vetor (" + DOUBLES + ")";
+    }
+}
@@ -0,0 +1,117 @@
+package com.projeto.tcc.services;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+Núcleos das comparações de descritores nos agrupamentos: distância euclidiana ao quadrado e produto interno
+sobre float[] (diferenças e produtos somados em double, como nas versões escalares) e distância de Hamming
+sobre bits empacotados em long[].
+
+Com a JVM iniciada com --add-modules jdk.incubator.vector, os núcleos de float[] usam a Vector API
+(VectorKernels); sem o módulo, o laço escalar equivalente. A distância de Hamming é sempre escalar:
+Long.bitCount já vira uma instrução popcnt, e a contagem de bits por lane só chegou à Vector API depois
+do Java 17.
+ */
+@Slf4j
+public final class VectorMath {
+
+    interface Kernels {
+        double squaredDistance(float[] vector1, float[] vector2, int length);
+
+        double dot(float[] vector1, float[] vector2, int length);
+    }
+
+    static final Kernels SCALAR = new ScalarKernels();
+    static final Kernels KERNELS = loadKernels();
+
+    private VectorMath() {
+    }
+
+    // A classe com a Vector API só é carregada quando o módulo está presente
+    private static Kernels loadKernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            log.info("Módulo jdk.incubator.vector ausente: distâncias calculadas com laços escalares.");
+            return SCALAR;
+        }
+        try {
+            Kernels kernels = (Kernels) Class.forName(VectorMath.class.getPackageName() + ".VectorKernels")
+                    .getDeclaredConstructor().newInstance();
+            log.info("Distâncias calculadas com a Vector API: {}", kernels);
+            return kernels;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Vector API indisponível, usando laços escalares: {}", e.toString());
+            return SCALAR;
+        }
+    }
+
+    public static boolean isVectorized() {
+        return KERNELS != SCALAR;
+    }
+
+    public static double squaredDistance(float[] vector1, float[] vector2) {
+        checkLengths(vector1.length, vector2.length);
+        return KERNELS.squaredDistance(vector1, vector2, vector1.length);
+    }
+
+    public static double dot(float[] vector1, float[] vector2) {
+        checkLengths(vector1.length, vector2.length);
+        return KERNELS.dot(vector1, vector2, vector1.length);
+    }
+
+    // Bits diferentes entre bits1[offset1..offset1 + words) e bits2[offset2..offset2 + words)
+    public static int hamming(long[] bits1, int offset1, long[] bits2, int offset2, int words) {
+        int distance = 0;
+        for (int i = 0; i < words; i++) {
+            distance += Long.bitCount(bits1[offset1 + i] ^ bits2[offset2 + i]);
+        }
+        return distance;
+    }
+
+    /*
+    Bytes de "rows" linhas de "cols" bytes empacotados em palavras de 64 bits, (cols + 7) / 8 por linha;
+    o fim de cada linha é completado com zeros, que não alteram a distância de Hamming.
+     */
+    public static long[] packBits(byte[] data, int rows, int cols) {
+        int words = (cols + 7) / 8;
+        long[] bits = new long[rows * words];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                bits[row * words + col / 8] |= (data[row * cols + col] & 0xFFL) << (8 * (col % 8));
+            }
+        }
+        return bits;
+    }
+
+    private static void checkLengths(int length1, int length2) {
+        if (length1 != length2) {
+            throw new IllegalArgumentException("Vetores com tamanhos diferentes: " + length1 + " e " + length2 + ".");
+        }
+    }
+
+    static final class ScalarKernels implements Kernels {
+
+        @Override
+        public double squaredDistance(float[] vector1, float[] vector2, int length) {
+            double sum = 0;
+            for (int i = 0; i < length; i++) {
+                double difference = vector1[i] - vector2[i];
+                sum += difference * difference;
+            }
+            return sum;
+        }
+
+        @Override
+        public double dot(float[] vector1, float[] vector2, int length) {
+            double sum = 0;
+            for (int i = 0; i < length; i++) {
+                sum += (double) vector1[i] * vector2[i];
+            }
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            return "escalar";
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.projeto.tcc.services;
+
+// Conversão entre timestamp (microssegundos) e índice global do quadro para vídeos de taxa constante
+public class VideoTiming {
+
+    private final double frameRate;
+    private final long firstTimestamp;
+    private final int lengthInFrames;
+
+    public VideoTiming(double frameRate, long firstTimestamp, int lengthInFrames) {
+        this.frameRate = frameRate;
+        this.firstTimestamp = firstTimestamp;
+        this.lengthInFrames = lengthInFrames;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public int getLengthInFrames() {
+        return lengthInFrames;
+    }
+
+    /*
+    Índice de um quadro da decodificação sequencial: na decodificação completa, a contagem dos quadros já
+    decodificados, porque em vídeos de taxa variável dois timestamps podem arredondar para o mesmo índice;
+    nos modos que descartam quadros, o índice que o timestamp teria na decodificação completa.
+     */
+    public int sequentialFrameIndex(DecodeMode mode, int decodedFrames, long timestamp) {
+        return mode == DecodeMode.FULL ? decodedFrames : toFrameIndex(timestamp);
+    }
+
+    public int toFrameIndex(long timestamp) {
+        return (int) Math.round((timestamp - firstTimestamp) * frameRate / 1_000_000.0);
+    }
+
+    public long toTimestamp(int frameIndex) {
+        return firstTimestamp + Math.round(frameIndex * 1_000_000.0 / frameRate);
+    }
+}
@@ -0,0 +1,38 @@
+package com.projeto.tcc.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class CnnInferencePipelineTest {
+
+    // Sem quadros carregados com sucesso a inferência não chega a rodar, então o modelo não é necessário
+    private final CnnInferencePipeline pipeline = new CnnInferencePipeline(null, 2, 4, 8);
+
+    @Test
+    void loaderErrorReachesCallerInsteadOfHanging() {
+        OutOfMemoryError error = new OutOfMemoryError("teste");
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            OutOfMemoryError thrown = assertThrows(OutOfMemoryError.class, () -> pipeline.run(20, position -> {
+                throw error;
+            }, (position, features) -> { }));
+            assertSame(error, thrown);
+        });
+    }
+
+    @Test
+    void loaderExceptionReachesCaller() {
+        IOException exception = new IOException("teste");
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            IOException thrown = assertThrows(IOException.class, () -> pipeline.run(20, position -> {
+                throw exception;
+            }, (position, features) -> { }));
+            assertSame(exception, thrown);
+        });
+    }
+}
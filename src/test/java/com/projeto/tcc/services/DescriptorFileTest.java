@@ -0,0 +1,249 @@
+package com.projeto.tcc.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8U;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DescriptorFileTest {
+
+    private static final int DIMENSION = 64;
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void float32RoundTripKeepsValuesAndFrameIndices() throws IOException {
+        float[][] descriptors = randomDescriptors(new Random(1), 10);
+        File file = write(DescriptorFile.ValueType.FLOAT32, descriptors);
+
+        try (DescriptorFile.Reader reader = DescriptorFile.open(file)) {
+            assertEquals("HOG", reader.getExtractorName());
+            assertEquals(DescriptorFile.ValueType.FLOAT32, reader.getType());
+            assertEquals(DIMENSION, reader.getDimension());
+            assertEquals("teste", reader.getMetadata());
+            assertEquals(descriptors.length, reader.size());
+            for (int i = 0; i < descriptors.length; i++) {
+                assertEquals(frameIndex(i), reader.frameIndexAt(i));
+                assertArrayEquals(descriptors[i], reader.readFloats(i));
+            }
+        }
+    }
+
+    @Test
+    void recordsWrittenFromSlabMatchSeparateVectors() throws IOException {
+        float[][] descriptors = randomDescriptors(new Random(10), 6);
+        float[] slab = new float[descriptors.length * DIMENSION];
+        for (int i = 0; i < descriptors.length; i++) {
+            System.arraycopy(descriptors[i], 0, slab, i * DIMENSION, DIMENSION);
+        }
+        for (DescriptorFile.ValueType type : new DescriptorFile.ValueType[]{DescriptorFile.ValueType.FLOAT32,
+                DescriptorFile.ValueType.FLOAT16, DescriptorFile.ValueType.INT8}) {
+            File separate = write(type, descriptors);
+            File fromSlab = new File(tempDir, "slab" + type + DescriptorFile.EXTENSION);
+            try (DescriptorOutput output = new DescriptorOutput(fromSlab, new FileOutputStream(fromSlab), "HOG", type,
+                    DIMENSION, "teste", true)) {
+                for (int i = 0; i < descriptors.length; i++) {
+                    output.writeFloats(frameIndex(i), slab, i * DIMENSION);
+                }
+            }
+            assertArrayEquals(Files.readAllBytes(separate.toPath()), Files.readAllBytes(fromSlab.toPath()), type.name());
+        }
+    }
+
+    @Test
+    void closeWritesRecordCount() throws IOException {
+        File file = write(DescriptorFile.ValueType.FLOAT32, randomDescriptors(new Random(2), 7));
+
+        assertEquals(7, readLong(file, 24));
+    }
+
+    @Test
+    void emptyFileKeepsHeaderAndZeroCount() throws IOException {
+        File file = write(DescriptorFile.ValueType.FLOAT32, new float[0][]);
+
+        try (DescriptorFile.Reader reader = DescriptorFile.open(file)) {
+            assertEquals(0, reader.size());
+            assertEquals(DIMENSION, reader.getDimension());
+        }
+        assertEquals(0, readLong(file, 24));
+    }
+
+    @Test
+    void countDifferentFromRecordsIsRejected() throws IOException {
+        File file = write(DescriptorFile.ValueType.FLOAT32, randomDescriptors(new Random(3), 5));
+        DescriptorFile.writeCount(file, 6);
+
+        assertThrows(IOException.class, () -> DescriptorFile.open(file).close());
+    }
+
+    @Test
+    void unfinishedFileIgnoresPartialRecord() throws IOException {
+        File file = write(DescriptorFile.ValueType.FLOAT32, randomDescriptors(new Random(4), 5));
+        // Gravação interrompida: quantidade desconhecida e metade do último registro
+        DescriptorFile.writeCount(file, -1);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - DescriptorFile.recordSize(DescriptorFile.ValueType.FLOAT32, DIMENSION) / 2);
+        }
+
+        try (DescriptorFile.Reader reader = DescriptorFile.open(file)) {
+            assertEquals(4, reader.size());
+        }
+    }
+
+    @Test
+    void unknownVersionIsRejected() throws IOException {
+        File file = write(DescriptorFile.ValueType.FLOAT32, randomDescriptors(new Random(5), 3));
+        writeInt(file, 4, 2);
+
+        assertThrows(IOException.class, () -> DescriptorFile.open(file).close());
+    }
+
+    @Test
+    void invalidMagicIsRejected() throws IOException {
+        File file = write(DescriptorFile.ValueType.FLOAT32, randomDescriptors(new Random(6), 3));
+        writeInt(file, 0, 0);
+
+        assertThrows(IOException.class, () -> DescriptorFile.open(file).close());
+    }
+
+    @Test
+    void float16RoundTripStaysWithinHalfPrecision() throws IOException {
+        float[][] descriptors = randomDescriptors(new Random(8), 20);
+        File file = write(DescriptorFile.ValueType.FLOAT16, descriptors);
+
+        assertEquals(DescriptorFile.recordSize(DescriptorFile.ValueType.FLOAT16, DIMENSION),
+                (file.length() - headerSize(file)) / descriptors.length);
+        try (DescriptorFile.Reader reader = DescriptorFile.open(file)) {
+            assertEquals(descriptors.length, reader.size());
+            for (int i = 0; i < descriptors.length; i++) {
+                assertEquals(frameIndex(i), reader.frameIndexAt(i));
+                float[] decoded = reader.readFloats(i);
+                for (int j = 0; j < DIMENSION; j++) {
+                    // Meio ulp da meia precisão: 2^-11 relativo, 2^-25 absoluto na faixa subnormal
+                    float original = descriptors[i][j];
+                    assertEquals(original, decoded[j], Math.max(Math.abs(original) * 0x1p-11f, 0x1p-25f));
+                }
+            }
+        }
+    }
+
+    @Test
+    void float16ConversionHandlesLimits() {
+        for (float value : new float[]{0f, -0f, 1f, -2.5f, 65504f, 0x1p-14f, 0x1p-24f}) {
+            assertEquals(value, DescriptorFile.halfToFloat(DescriptorFile.floatToHalf(value)));
+        }
+        assertEquals(Float.POSITIVE_INFINITY, DescriptorFile.halfToFloat(DescriptorFile.floatToHalf(65520f)));
+        assertEquals(Float.NEGATIVE_INFINITY, DescriptorFile.halfToFloat(DescriptorFile.floatToHalf(-1e10f)));
+        assertEquals(0f, DescriptorFile.halfToFloat(DescriptorFile.floatToHalf(0x1p-26f)));
+        assertEquals(Float.NaN, DescriptorFile.halfToFloat(DescriptorFile.floatToHalf(Float.NaN)));
+    }
+
+    @Test
+    void int8RoundTripStaysWithinHalfQuantizationStep() throws IOException {
+        float[][] descriptors = randomDescriptors(new Random(9), 20);
+        descriptors[3] = new float[DIMENSION];
+        File file = write(DescriptorFile.ValueType.INT8, descriptors);
+
+        assertEquals(DescriptorFile.recordSize(DescriptorFile.ValueType.INT8, DIMENSION),
+                (file.length() - headerSize(file)) / descriptors.length);
+        try (DescriptorFile.Reader reader = DescriptorFile.open(file)) {
+            assertEquals(descriptors.length, reader.size());
+            for (int i = 0; i < descriptors.length; i++) {
+                assertEquals(frameIndex(i), reader.frameIndexAt(i));
+                float maxAbs = 0;
+                for (float value : descriptors[i]) {
+                    maxAbs = Math.max(maxAbs, Math.abs(value));
+                }
+                float scale = maxAbs / 127f;
+                float[] decoded = reader.readFloats(i);
+                for (int j = 0; j < DIMENSION; j++) {
+                    assertEquals(descriptors[i][j], decoded[j], scale / 2 * 1.0001f);
+                }
+            }
+        }
+    }
+
+    @Test
+    void orbRoundTripKeepsKeypointsOfEachFrame() throws IOException {
+        Random random = new Random(7);
+        int[] rows = {500, 0, 1, 37};
+        byte[][] data = new byte[rows.length][];
+        File file;
+        try (DescriptorOutput output = DescriptorOutput.create(tempDir, "ORB", true, DescriptorFile.ValueType.UINT8,
+                ORBExtractor.DESCRIPTOR_BYTES, null)) {
+            for (int i = 0; i < rows.length; i++) {
+                data[i] = new byte[rows[i] * ORBExtractor.DESCRIPTOR_BYTES];
+                random.nextBytes(data[i]);
+                output.writeOrb(frameIndex(i), new OrbDescriptors(rows[i], rows[i] == 0 ? 0 : ORBExtractor.DESCRIPTOR_BYTES, CV_8U, data[i]));
+            }
+            file = output.getFile();
+        }
+
+        assertEquals(rows.length, readLong(file, 24));
+        try (DescriptorFile.Reader reader = DescriptorFile.open(file)) {
+            assertEquals(DescriptorFile.ValueType.UINT8, reader.getType());
+            assertEquals(rows.length, reader.size());
+            for (int i = 0; i < rows.length; i++) {
+                assertEquals(frameIndex(i), reader.frameIndexAt(i));
+                assertEquals(rows[i], reader.rowsAt(i));
+                assertArrayEquals(data[i], reader.readOrb(i).getData());
+            }
+        }
+    }
+
+    private File write(DescriptorFile.ValueType type, float[][] descriptors) throws IOException {
+        try (DescriptorOutput output = DescriptorOutput.create(tempDir, "HOG", true, type, DIMENSION, "teste")) {
+            for (int i = 0; i < descriptors.length; i++) {
+                output.writeFloats(frameIndex(i), descriptors[i]);
+            }
+            return output.getFile();
+        }
+    }
+
+    // Índices com lacunas, como depois de descartar quadros na decodificação
+    private static int frameIndex(int position) {
+        return position * 3 + 1;
+    }
+
+    private static float[][] randomDescriptors(Random random, int count) {
+        float[][] descriptors = new float[count][DIMENSION];
+        for (float[] descriptor : descriptors) {
+            for (int i = 0; i < DIMENSION; i++) {
+                descriptor[i] = (float) random.nextGaussian();
+            }
+        }
+        return descriptors;
+    }
+
+    private static long headerSize(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(32);
+            return Integer.reverseBytes(raf.readInt());
+        }
+    }
+
+    private static long readLong(File file, int offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            return Long.reverseBytes(raf.readLong());
+        }
+    }
+
+    private static void writeInt(File file, int offset, int value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeInt(Integer.reverseBytes(value));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.projeto.tcc.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8U;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DescriptorReaderTest {
+
+    // Somente quadros-chave, com um quase duplicado descartado no meio
+    private static final int[] FRAME_INDICES = {0, 30, 60, 120, 150};
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void binaryFileReportsFrameIndicesWithGaps() throws IOException {
+        File file = writeFloats(true);
+
+        assertFrameIndices(file, FRAME_INDICES);
+        assertValues(file);
+    }
+
+    @Test
+    void textFileReportsFrameIndicesWithGaps() throws IOException {
+        File file = writeFloats(false);
+
+        assertFrameIndices(file, FRAME_INDICES);
+        assertValues(file);
+    }
+
+    @Test
+    void readFrameIndicesMatchesRecords() throws IOException {
+        assertArrayEquals(FRAME_INDICES, DescriptorReader.readFrameIndices(writeFloats(true)));
+        assertArrayEquals(FRAME_INDICES, DescriptorReader.readFrameIndices(writeFloats(false)));
+    }
+
+    @Test
+    void orbTextFileReportsFrameIndicesWithGaps() throws IOException {
+        File file;
+        try (DescriptorOutput output = DescriptorOutput.create(tempDir, "ORB", false, DescriptorFile.ValueType.UINT8,
+                ORBExtractor.DESCRIPTOR_BYTES, null)) {
+            for (int i = 0; i < FRAME_INDICES.length; i++) {
+                int rows = i % 2;
+                output.writeOrb(FRAME_INDICES[i], new OrbDescriptors(rows, rows * ORBExtractor.DESCRIPTOR_BYTES, CV_8U,
+                        new byte[rows * ORBExtractor.DESCRIPTOR_BYTES]));
+            }
+            file = output.getFile();
+        }
+
+        try (DescriptorReader reader = DescriptorReader.open(file)) {
+            for (int i = 0; i < FRAME_INDICES.length; i++) {
+                assertTrue(reader.next());
+                assertTrue(reader.isOrb());
+                assertEquals(i % 2, reader.orbRows());
+                assertEquals(FRAME_INDICES[i], reader.frameIndex());
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    void textFileWithoutFrameLinesUsesPosition() throws IOException {
+        File file = new File(tempDir, "descritoresCNN.txt");
+        Files.writeString(file.toPath(), "# modelo=VGG16\n1.0,2.0\n\n3.0,4.0\n\n# outro comentario\n5.0,6.0\n\n", StandardCharsets.UTF_8);
+
+        assertFrameIndices(file, new int[]{0, 1, 2});
+    }
+
+    private File writeFloats(boolean binary) throws IOException {
+        try (DescriptorOutput output = DescriptorOutput.create(tempDir, "HOG", binary, DescriptorFile.ValueType.FLOAT32, 2, null)) {
+            for (int frameIndex : FRAME_INDICES) {
+                output.writeFloats(frameIndex, new float[]{frameIndex, -frameIndex / 2f});
+            }
+            return output.getFile();
+        }
+    }
+
+    private static void assertFrameIndices(File file, int[] expected) throws IOException {
+        try (DescriptorReader reader = DescriptorReader.open(file)) {
+            for (int i = 0; i < expected.length; i++) {
+                assertTrue(reader.next());
+                assertEquals(i, reader.position());
+                assertEquals(expected[i], reader.frameIndex());
+                assertEquals(2, reader.length());
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    private static void assertValues(File file) throws IOException {
+        try (DescriptorReader reader = DescriptorReader.open(file)) {
+            for (int frameIndex : FRAME_INDICES) {
+                assertTrue(reader.next());
+                assertArrayEquals(new float[]{frameIndex, -frameIndex / 2f}, reader.copyFloats());
+            }
+        }
+    }
+}
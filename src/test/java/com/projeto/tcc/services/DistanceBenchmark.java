@@ -0,0 +1,156 @@
+package com.projeto.tcc.services;
+
+import org.bytedeco.opencv.opencv_core.DMatchVector;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_features2d.DescriptorMatcher;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+Comparação das distâncias dos agrupamentos com as versões anteriores: o laço com Math.pow do HOG, a
+similaridade do CNN com INDArrays e o BFMatcher do OpenCV no ORB, contra os núcleos de VectorMath (escalar
+e Vector API). Não roda nos testes; executar o main com as classes de teste no classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DistanceBenchmark {
+
+    private static final int HOG_DIMENSION = 3780;
+    private static final int CNN_DIMENSION = 1000;
+    private static final int ORB_KEYPOINTS = 500;
+
+    private float[] hog1;
+    private float[] hog2;
+    private float[] cnn1;
+    private float[] cnn2;
+    private INDArray cnnArray1;
+    private INDArray cnnArray2;
+    private OrbDescriptors orb1;
+    private OrbDescriptors orb2;
+    private Mat orbMat1;
+    private Mat orbMat2;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DistanceBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        hog1 = randomFloats(random, HOG_DIMENSION);
+        hog2 = randomFloats(random, HOG_DIMENSION);
+        cnn1 = randomFloats(random, CNN_DIMENSION);
+        cnn2 = randomFloats(random, CNN_DIMENSION);
+        cnnArray1 = Nd4j.create(cnn1);
+        cnnArray2 = Nd4j.create(cnn2);
+        orb1 = randomOrb(random);
+        orb2 = randomOrb(random);
+        orbMat1 = orb1.toMat();
+        orbMat2 = orb2.toMat();
+    }
+
+    @TearDown
+    public void tearDown() {
+        orbMat1.release();
+        orbMat2.release();
+    }
+
+    private static float[] randomFloats(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat();
+        }
+        return values;
+    }
+
+    private static OrbDescriptors randomOrb(Random random) {
+        byte[] data = new byte[ORB_KEYPOINTS * ORBExtractor.DESCRIPTOR_BYTES];
+        random.nextBytes(data);
+        return new OrbDescriptors(ORB_KEYPOINTS, ORBExtractor.DESCRIPTOR_BYTES, org.bytedeco.opencv.global.opencv_core.CV_8U, data);
+    }
+
+    @Benchmark
+    public double hogMathPow() {
+        double distancia = 0;
+        for (int i = 0; i < hog1.length; i++) {
+            distancia += Math.pow(hog1[i] - hog2[i], 2);
+        }
+        return distancia;
+    }
+
+    @Benchmark
+    public double hogScalar() {
+        return VectorMath.SCALAR.squaredDistance(hog1, hog2, hog1.length);
+    }
+
+    @Benchmark
+    public double hogVector() {
+        return VectorMath.KERNELS.squaredDistance(hog1, hog2, hog1.length);
+    }
+
+    @Benchmark
+    public double cnnIndArray() {
+        INDArray normFeatures1 = cnnArray1.div(cnnArray1.norm2Number());
+        INDArray normFeatures2 = cnnArray2.div(cnnArray2.norm2Number());
+        return normFeatures1.sub(normFeatures2).norm2Number().doubleValue();
+    }
+
+    @Benchmark
+    public double cnnScalar() {
+        return VectorMath.SCALAR.dot(cnn1, cnn2, CNN_DIMENSION) / Math.sqrt(VectorMath.SCALAR.dot(cnn1, cnn1, CNN_DIMENSION)
+                * VectorMath.SCALAR.dot(cnn2, cnn2, CNN_DIMENSION));
+    }
+
+    @Benchmark
+    public double cnnVector() {
+        return CNNExtractor.compareFeatures(cnn1, cnn2);
+    }
+
+    // Como era ORBExtractor.compareFeatures: todos os keypoints casados, os primeiros 50 usados
+    @Benchmark
+    public double orbBfMatcher() {
+        DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.BRUTEFORCE_HAMMING);
+        DMatchVector matches = new DMatchVector();
+        matcher.match(orbMat1, orbMat2, matches);
+        double distanciaHammingMedia = 0;
+        int count = (int) Math.min(50, matches.size());
+        for (int i = 0; i < count; i++) {
+            distanciaHammingMedia += matches.get(i).distance();
+        }
+        matches.close();
+        matcher.close();
+        return distanciaHammingMedia / count;
+    }
+
+    @Benchmark
+    public double orbHamming() {
+        return ORBExtractor.compareFeatures(orb1, orb2);
+    }
+
+    // Inclui a cópia dos Mats para byte[] feita em compareFeatures(Mat, Mat)
+    @Benchmark
+    public double orbHammingFromMat() {
+        return ORBExtractor.compareFeatures(orbMat1, orbMat2);
+    }
+}
@@ -0,0 +1,168 @@
+package com.projeto.tcc.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HogGroupIndexTest {
+
+    private static final int DIMENSION = 3780;
+    private static final double LN9 = Math.log(9);
+
+    @Test
+    void indexedGroupingMatchesLinearGrouping() {
+        Random random = new Random(23);
+        List<float[]> descriptors = clusteredDescriptors(random, 40, 600);
+        for (double threshold : new double[]{0.05, 0.12, 0.2, 0.3, 0.45, 0.6}) {
+            for (int dimensions : new int[]{2, 8, 16}) {
+                assertArrayEquals(group(descriptors, threshold, 0), group(descriptors, threshold, dimensions),
+                        "limiar " + threshold + ", " + dimensions + " dimensões");
+            }
+        }
+    }
+
+    /*
+    Descritores a distâncias que ficam a poucos ulps dos limites da regra nunca são descartados. Médias e
+    descritores ficam num subespaço de 4 dimensões, que a base do índice cobre: os limites do intervalo ficam
+    praticamente iguais à distância exata, e só as folgas de arredondamento separam a decisão do índice da regra.
+     */
+    @Test
+    void groupsAcceptedAtTheBoundariesAreNeverPruned() {
+        Random random = new Random(42);
+        double threshold = 0.3;
+        float[] center = randomHog(random);
+        float[][] directions = new float[4][];
+        for (int k = 0; k < directions.length; k++) {
+            directions[k] = unitDirection(random);
+        }
+        HogGroupIndex index = new HogGroupIndex(4, threshold);
+        List<float[]> averages = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            float[] average = combine(center, directions, random, 3);
+            averages.add(average);
+            index.add(average);
+        }
+        double[] boundaries = {Math.log(1 / threshold - 1), LN9, Math.log(10 / threshold - 1)};
+        int accepted = 0;
+        int rejected = 0;
+        for (int group = 8; group < averages.size(); group++) {
+            float[] average = averages.get(group);
+            float[] direction = combine(new float[DIMENSION], directions, random, 1);
+            double norm = Math.sqrt(VectorMath.squaredDistance(direction, new float[DIMENSION]));
+            for (double boundary : boundaries) {
+                for (int k = -200; k <= 200; k++) {
+                    double distance = boundary * (1 + k * 1e-9) / norm;
+                    float[] descriptor = new float[DIMENSION];
+                    for (int i = 0; i < DIMENSION; i++) {
+                        descriptor[i] = (float) (average[i] + direction[i] * distance);
+                    }
+                    if (HOGExtractor.distanciaEuclidiana(average, descriptor) < threshold) {
+                        accepted++;
+                        assertTrue(index.mayAccept(group, descriptor), "grupo " + group + " a " + distance * norm);
+                    } else {
+                        rejected++;
+                    }
+                }
+            }
+        }
+        assertTrue(accepted > 0 && rejected > 0);
+    }
+
+    // origin + soma de coeficientes aleatórios em [-scale, scale] vezes as direções
+    private static float[] combine(float[] origin, float[][] directions, Random random, double scale) {
+        double[] coefficients = new double[directions.length];
+        for (int k = 0; k < directions.length; k++) {
+            coefficients[k] = (random.nextDouble() * 2 - 1) * scale;
+        }
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            double value = origin[i];
+            for (int k = 0; k < directions.length; k++) {
+                value += coefficients[k] * directions[k][i];
+            }
+            vector[i] = (float) value;
+        }
+        return vector;
+    }
+
+    // Mesma regra de HOGExtractor.groupFramesHog: o primeiro grupo, na ordem de criação, que aceita o descritor
+    private static int[] group(List<float[]> descriptors, double threshold, int dimensions) {
+        HogGroupIndex index = new HogGroupIndex(dimensions, threshold);
+        List<float[]> averages = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        int[] labels = new int[descriptors.size()];
+        for (int d = 0; d < descriptors.size(); d++) {
+            float[] descriptor = descriptors.get(d);
+            int chosen = -1;
+            for (int group = 0; group < averages.size() && chosen < 0; group++) {
+                if (index.mayAccept(group, descriptor) && HOGExtractor.distanciaEuclidiana(averages.get(group), descriptor) < threshold) {
+                    chosen = group;
+                }
+            }
+            if (chosen < 0) {
+                averages.add(descriptor.clone());
+                sizes.add(1);
+                chosen = averages.size() - 1;
+                index.add(averages.get(chosen));
+            } else {
+                int size = sizes.get(chosen) + 1;
+                sizes.set(chosen, size);
+                float[] average = averages.get(chosen);
+                for (int i = 0; i < average.length; i++) {
+                    average[i] = (average[i] * (size - 1) + descriptor[i]) / size;
+                }
+                index.update(chosen);
+            }
+            labels[d] = chosen;
+        }
+        return labels;
+    }
+
+    // Cenas com quadros espalhados em torno de um centro, a distâncias que cruzam os limites da regra
+    private static List<float[]> clusteredDescriptors(Random random, int scenes, int count) {
+        List<float[]> centers = new ArrayList<>();
+        for (int i = 0; i < scenes; i++) {
+            centers.add(randomHog(random));
+        }
+        List<float[]> descriptors = new ArrayList<>();
+        for (int d = 0; d < count; d++) {
+            float[] center = centers.get(d * scenes / count);
+            float[] direction = unitDirection(random);
+            double distance = random.nextDouble() * 4;
+            float[] descriptor = new float[DIMENSION];
+            for (int i = 0; i < DIMENSION; i++) {
+                descriptor[i] = (float) (center[i] + direction[i] * distance);
+            }
+            descriptors.add(descriptor);
+        }
+        return descriptors;
+    }
+
+    private static float[] randomHog(Random random) {
+        float[] values = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            values[i] = random.nextFloat() * 0.5f;
+        }
+        return values;
+    }
+
+    private static float[] unitDirection(Random random) {
+        double[] values = new double[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            values[i] = random.nextGaussian();
+            norm += values[i] * values[i];
+        }
+        norm = Math.sqrt(norm);
+        float[] direction = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            direction[i] = (float) (values[i] / norm);
+        }
+        return direction;
+    }
+}
@@ -0,0 +1,67 @@
+package com.projeto.tcc.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class OrderedDescriptorWriterTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void batchesAreWrittenInSubmissionOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Integer> committed = new ArrayList<>();
+        try (DescriptorOutput output = DescriptorOutput.create(tempDir, "HOG", true, DescriptorFile.ValueType.FLOAT32, 1, null);
+             OrderedDescriptorWriter writer = new OrderedDescriptorWriter(output, 0, 3, committed::add)) {
+            for (int i = 0; i < 20; i++) {
+                int frameIndex = i;
+                writer.submit(executor, 1, () -> {
+                    // Lotes que terminam fora de ordem
+                    Thread.sleep((20 - frameIndex) % 4);
+                    return out -> out.writeFloats(frameIndex, new float[]{frameIndex});
+                });
+            }
+            writer.finish();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(20, committed.size());
+        assertEquals(20, committed.get(19));
+        try (DescriptorFile.Reader reader = DescriptorFile.open(new File(tempDir, DescriptorOutput.fileName("HOG", true)))) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, reader.frameIndexAt(i));
+            }
+        }
+    }
+
+    @Test
+    void rejectedSubmissionFailsInsteadOfBlocking() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        try (DescriptorOutput output = DescriptorOutput.create(tempDir, "HOG", true, DescriptorFile.ValueType.FLOAT32, 1, null);
+             OrderedDescriptorWriter writer = new OrderedDescriptorWriter(output, 0, 1, writtenFrames -> { })) {
+            assertThrows(RejectedExecutionException.class,
+                    () -> writer.submit(executor, 1, () -> out -> out.writeFloats(0, new float[]{0})));
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                // A janela de um lote continua livre para quem agenda ver a falha
+                assertThrows(RejectedExecutionException.class,
+                        () -> writer.submit(executor, 1, () -> out -> out.writeFloats(1, new float[]{1})));
+                assertThrows(RejectedExecutionException.class, writer::finish);
+            });
+        }
+    }
+}